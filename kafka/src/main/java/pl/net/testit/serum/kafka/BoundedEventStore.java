@@ -0,0 +1,100 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+/**
+ * On-heap event store evicting oldest events according to {@link RetentionPolicy}.
+ */
+class BoundedEventStore<T> implements EventStore<T> {
+
+  private final RetentionPolicy policy;
+  private final LongSupplier clock;
+  private final Deque<StoredEvent<T>> events = new ArrayDeque<>(100);
+  private long retainedBytes;
+  private long evictedCount;
+
+  BoundedEventStore(RetentionPolicy policy) {
+    this(policy, System::currentTimeMillis);
+  }
+
+  BoundedEventStore(RetentionPolicy policy, LongSupplier clock) {
+    this.policy = policy;
+    this.clock = clock;
+  }
+
+  @Override
+  public void add(KafkaEventWrapper<T> event) {
+    var storedEvent = new StoredEvent<>(event, estimateSize(event.getConsumerRecord()), clock.getAsLong());
+    events.addLast(storedEvent);
+    retainedBytes += storedEvent.size;
+    evict();
+  }
+
+  @Override
+  public Iterator<KafkaEventWrapper<T>> iterator() {
+    evict();
+    var iterator = events.iterator();
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public KafkaEventWrapper<T> next() {
+        return iterator.next().event;
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    evict();
+    return events.size();
+  }
+
+  @Override
+  public long getEvictedCount() {
+    return evictedCount;
+  }
+
+  @Override
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  private void evict() {
+    var expiredBefore = policy.hasTimeToLive() ? clock.getAsLong() - policy.getTimeToLiveMillis() : Long.MIN_VALUE;
+    while (!events.isEmpty() && (events.size() > policy.getMaxCount() || retainedBytes > policy.getMaxBytes()
+        || events.peekFirst().storedAt < expiredBefore)) {
+      retainedBytes -= events.removeFirst().size;
+      evictedCount++;
+    }
+  }
+
+  static long estimateSize(ConsumerRecord<?, ?> record) {
+    long size = Math.max(record.serializedKeySize(), 0) + Math.max(record.serializedValueSize(), 0);
+    for (Header header : record.headers()) {
+      size += header.key().length() + (header.value() == null ? 0 : header.value().length);
+    }
+    return size;
+  }
+
+  private static class StoredEvent<T> {
+
+    private final KafkaEventWrapper<T> event;
+    private final long size;
+    private final long storedAt;
+
+    private StoredEvent(KafkaEventWrapper<T> event, long size, long storedAt) {
+      this.event = event;
+      this.size = size;
+      this.storedAt = storedAt;
+    }
+  }
+}
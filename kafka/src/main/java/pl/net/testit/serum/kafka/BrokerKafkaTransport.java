@@ -0,0 +1,92 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+/**
+ * Transport connecting to kafka broker. Admin client is created on first use and reused until transport is closed.
+ */
+class BrokerKafkaTransport implements KafkaTransport {
+
+  private final Properties adminProperties;
+  private Admin adminClient;
+
+  BrokerKafkaTransport(Properties adminProperties) {
+    this.adminProperties = adminProperties;
+  }
+
+  @Override
+  public Producer<String, byte[]> createProducer(Properties properties) {
+    return new KafkaProducer<>(properties, new StringSerializer(), new ByteArraySerializer());
+  }
+
+  @Override
+  public Consumer<String, byte[]> createConsumer(Properties properties) {
+    return new KafkaConsumer<>(properties, new StringDeserializer(), new ByteArrayDeserializer());
+  }
+
+  @Override
+  public Map<String, CompletableFuture<Void>> deleteConsumerGroups(Collection<String> groupIds) {
+    return toCompletableFutures(getAdminClient().deleteConsumerGroups(groupIds).deletedGroups());
+  }
+
+  @Override
+  public Map<String, CompletableFuture<Void>> createTopics(Collection<NewTopic> topics) {
+    return toCompletableFutures(getAdminClient().createTopics(topics).values());
+  }
+
+  @Override
+  public Map<String, CompletableFuture<TopicDescription>> describeTopics(Collection<String> topics) {
+    return toCompletableFutures(getAdminClient().describeTopics(topics).topicNameValues());
+  }
+
+  @Override
+  public Map<String, CompletableFuture<Void>> deleteTopics(Collection<String> topics) {
+    return toCompletableFutures(getAdminClient().deleteTopics(topics).topicNameValues());
+  }
+
+  @Override
+  public synchronized void close() {
+    if (adminClient != null) {
+      adminClient.close();
+      adminClient = null;
+    }
+  }
+
+  private static <V> Map<String, CompletableFuture<V>> toCompletableFutures(Map<String, KafkaFuture<V>> futures) {
+    return futures.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> {
+          var result = new CompletableFuture<V>();
+          entry.getValue().whenComplete((value, ex) -> {
+            if (ex == null) {
+              result.complete(value);
+            } else {
+              result.completeExceptionally(ex);
+            }
+          });
+          return result;
+        }));
+  }
+
+  private synchronized Admin getAdminClient() {
+    if (adminClient == null) {
+      adminClient = Admin.create(adminProperties);
+    }
+    return adminClient;
+  }
+}
@@ -0,0 +1,55 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Substring search over UTF-8 encoded record values using Boyer-Moore-Horspool algorithm, so
+ * {@link KafkaEvent#filter()} can be checked without decoding record value to String. Matcher is immutable and can be
+ * shared between threads.
+ */
+class BytePatternMatcher {
+
+  private final byte[] pattern;
+  private final int[] shifts;
+
+  private BytePatternMatcher(byte[] pattern) {
+    this.pattern = pattern;
+    this.shifts = new int[256];
+    Arrays.fill(shifts, pattern.length);
+    for (int i = 0; i < pattern.length - 1; i++) {
+      shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+    }
+  }
+
+  /**
+   * @param pattern - text to search for, empty pattern matches every value
+   * @return matcher of UTF-8 encoding of pattern
+   */
+  static BytePatternMatcher of(String pattern) {
+    return new BytePatternMatcher(pattern.getBytes(StandardCharsets.UTF_8));
+  }
+
+  boolean matches(byte[] value) {
+    if (pattern.length == 0) {
+      return true;
+    }
+    return value != null && indexOf(value) >= 0;
+  }
+
+  int indexOf(byte[] value) {
+    var last = pattern.length - 1;
+    var position = 0;
+    while (position <= value.length - pattern.length) {
+      var i = last;
+      while (value[position + i] == pattern[i]) {
+        if (i == 0) {
+          return position;
+        }
+        i--;
+      }
+      position += shifts[value[position + last] & 0xFF];
+    }
+    return -1;
+  }
+}
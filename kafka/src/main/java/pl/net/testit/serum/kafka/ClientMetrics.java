@@ -0,0 +1,56 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot of consumption of all consumers created by {@link SerumKafkaClient}.
+ */
+public class ClientMetrics {
+
+  private final List<ConsumerMetrics> consumers;
+  private final CommitStats commitStats;
+  private final GroupCleanupStats groupCleanupStats;
+
+  ClientMetrics(List<ConsumerMetrics> consumers, CommitStats commitStats, GroupCleanupStats groupCleanupStats) {
+    this.consumers = List.copyOf(consumers);
+    this.commitStats = commitStats;
+    this.groupCleanupStats = groupCleanupStats;
+  }
+
+  /**
+   * @return metrics of consumers subscribed since client was created or all topics were unsubscribed
+   */
+  public List<ConsumerMetrics> getConsumers() {
+    return consumers;
+  }
+
+  /**
+   * @return offset commits of all topic pollers
+   */
+  public CommitStats getCommitStats() {
+    return commitStats;
+  }
+
+  public GroupCleanupStats getGroupCleanupStats() {
+    return groupCleanupStats;
+  }
+
+  public long getTotalLag() {
+    return consumers.stream()
+        .collect(Collectors.toMap(ConsumerMetrics::getTopic, ConsumerMetrics::getTotalLag, (first, second) -> first))
+        .values().stream()
+        .mapToLong(Long::longValue)
+        .sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Kafka client metrics:%n %s%n %s%n total lag: %d", commitStats, groupCleanupStats,
+        getTotalLag())
+        + consumers.stream()
+        .map(consumer -> String.format("%n %s", consumer.toString().replace(System.lineSeparator(),
+            System.lineSeparator() + " ")))
+        .collect(Collectors.joining());
+  }
+}
@@ -0,0 +1,72 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Defines how topic pollers commit consumed offsets. Consumer groups created by {@link SerumKafkaClient} are throwaway
+ * groups, so by default offsets are not committed at all.
+ */
+public final class CommitPolicy {
+
+  enum Mode {
+    NONE,
+    ASYNC,
+    SYNC
+  }
+
+  private final Mode mode;
+  private final Duration interval;
+
+  private CommitPolicy(Mode mode, Duration interval) {
+    this.mode = mode;
+    this.interval = interval;
+  }
+
+  /**
+   * Never commit offsets.
+   *
+   * @return commit policy
+   */
+  public static CommitPolicy none() {
+    return new CommitPolicy(Mode.NONE, Duration.ZERO);
+  }
+
+  /**
+   * Commit asynchronously at most once per interval, only when new records were polled since last commit. Pending
+   * offsets are committed synchronously when poller stops.
+   *
+   * @param interval - minimal time between commits, should be positive
+   * @return commit policy
+   * @throws IllegalArgumentException if interval is zero or negative
+   */
+  public static CommitPolicy async(Duration interval) {
+    Objects.requireNonNull(interval, "interval");
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("Commit interval should be positive, was " + interval);
+    }
+    return new CommitPolicy(Mode.ASYNC, interval);
+  }
+
+  /**
+   * Commit synchronously after every poll that returned records.
+   *
+   * @return commit policy
+   */
+  public static CommitPolicy sync() {
+    return new CommitPolicy(Mode.SYNC, Duration.ZERO);
+  }
+
+  Mode getMode() {
+    return mode;
+  }
+
+  Duration getInterval() {
+    return interval;
+  }
+
+  @Override
+  public String toString() {
+    return mode == Mode.ASYNC ? "ASYNC every " + interval : mode.name();
+  }
+}
@@ -0,0 +1,45 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of offset commits issued by topic poller(s).
+ */
+public class CommitStats {
+
+  private final long commitsIssued;
+  private final long commitsFailed;
+  private final Duration timeSpent;
+
+  CommitStats(long commitsIssued, long commitsFailed, Duration timeSpent) {
+    this.commitsIssued = commitsIssued;
+    this.commitsFailed = commitsFailed;
+    this.timeSpent = timeSpent;
+  }
+
+  public long getCommitsIssued() {
+    return commitsIssued;
+  }
+
+  public long getCommitsFailed() {
+    return commitsFailed;
+  }
+
+  /**
+   * @return time poll threads were blocked issuing commits
+   */
+  public Duration getTimeSpent() {
+    return timeSpent;
+  }
+
+  CommitStats add(CommitStats other) {
+    return new CommitStats(commitsIssued + other.commitsIssued, commitsFailed + other.commitsFailed,
+        timeSpent.plus(other.timeSpent));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("commits issued: %d, failed: %d, time spent: %d ms", commitsIssued, commitsFailed,
+        timeSpent.toMillis());
+  }
+}
@@ -0,0 +1,146 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Map;
+
+/**
+ * Snapshot of consumption of single {@link SerumKafkaConsumer}. Poll, lag and commit metrics come from poller shared
+ * by all consumers of the topic within one client, record counts and deserializations are counted per consumer.
+ */
+public class ConsumerMetrics {
+
+  private final String topic;
+  private final String consumerGroupId;
+  private final long recordsPolled;
+  private final long recordsFiltered;
+  private final long recordsStored;
+  private final DeserializationStats deserializationStats;
+  private final LatencyStats deserializationLatency;
+  private final int retainedEvents;
+  private final long retainedBytes;
+  private final long evictedEvents;
+  private final Map<Integer, Long> partitionLag;
+  private final LatencyStats pollLatency;
+  private final CommitStats commitStats;
+  private final LatencyStats commitLatency;
+
+  ConsumerMetrics(String topic, String consumerGroupId, long recordsPolled, long recordsFiltered, long recordsStored,
+      DeserializationStats deserializationStats, LatencyStats deserializationLatency, int retainedEvents,
+      long retainedBytes, long evictedEvents, Map<Integer, Long> partitionLag, LatencyStats pollLatency,
+      CommitStats commitStats, LatencyStats commitLatency) {
+    this.topic = topic;
+    this.consumerGroupId = consumerGroupId;
+    this.recordsPolled = recordsPolled;
+    this.recordsFiltered = recordsFiltered;
+    this.recordsStored = recordsStored;
+    this.deserializationStats = deserializationStats;
+    this.deserializationLatency = deserializationLatency;
+    this.retainedEvents = retainedEvents;
+    this.retainedBytes = retainedBytes;
+    this.evictedEvents = evictedEvents;
+    this.partitionLag = partitionLag;
+    this.pollLatency = pollLatency;
+    this.commitStats = commitStats;
+    this.commitLatency = commitLatency;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  /**
+   * @return consumer group of topic poller, null when partitions are assigned manually
+   */
+  public String getConsumerGroupId() {
+    return consumerGroupId;
+  }
+
+  /**
+   * @return records polled from topic by poller shared with other consumers of the topic
+   */
+  public long getRecordsPolled() {
+    return recordsPolled;
+  }
+
+  /**
+   * @return records skipped because they were produced before subscription or did not match event class filters
+   */
+  public long getRecordsFiltered() {
+    return recordsFiltered;
+  }
+
+  /**
+   * @return records accepted by this consumer and visible to waits, including ones evicted afterwards
+   */
+  public long getRecordsStored() {
+    return recordsStored;
+  }
+
+  /**
+   * @return records which value could not be deserialized to event class
+   */
+  public long getRecordsFailed() {
+    return deserializationStats.getFailed();
+  }
+
+  public DeserializationStats getDeserializationStats() {
+    return deserializationStats;
+  }
+
+  public LatencyStats getDeserializationLatency() {
+    return deserializationLatency;
+  }
+
+  public int getRetainedEvents() {
+    return retainedEvents;
+  }
+
+  /**
+   * @return estimated size of events buffered by this consumer
+   */
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  public long getEvictedEvents() {
+    return evictedEvents;
+  }
+
+  /**
+   * @return records not yet polled by partition, empty when poller has no partitions assigned. Refreshed by poll loop
+   *     once per second.
+   */
+  public Map<Integer, Long> getPartitionLag() {
+    return partitionLag;
+  }
+
+  public long getTotalLag() {
+    return partitionLag.values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  public LatencyStats getPollLatency() {
+    return pollLatency;
+  }
+
+  public CommitStats getCommitStats() {
+    return commitStats;
+  }
+
+  public LatencyStats getCommitLatency() {
+    return commitLatency;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("topic %s %s:%n"
+            + " records polled: %d, filtered: %d, stored: %d, failed: %d%n"
+            + " retained events: %d, bytes: %d, evicted: %d%n"
+            + " lag: %d %s%n"
+            + " poll latency: %s%n"
+            + " %s, latency: %s%n"
+            + " %s, latency: %s",
+        topic, consumerGroupId == null ? "with manually assigned partitions" : "in consumer group " + consumerGroupId,
+        recordsPolled, recordsFiltered, recordsStored, getRecordsFailed(), retainedEvents,
+        retainedBytes, evictedEvents, getTotalLag(), partitionLag, pollLatency, commitStats, commitLatency,
+        deserializationStats, deserializationLatency);
+  }
+}
@@ -0,0 +1,101 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Client wide settings of topic pollers configured by {@link SerumKafkaClientBuilder}.
+ */
+class ConsumerOptions {
+
+  private Duration startOffsetLookBack = Duration.ofSeconds(10);
+  private CommitPolicy commitPolicy = CommitPolicy.none();
+  private RetentionPolicy retentionPolicy = RetentionPolicy.unbounded();
+  private Path spillDirectory;
+  private int partitionWorkers;
+  private int partitionQueueCapacity = 500;
+  private boolean virtualThreads;
+  private Duration readinessTimeout = Duration.ofSeconds(30);
+  private boolean manualAssignment;
+  private Duration partitionRefreshInterval = Duration.ofSeconds(5);
+
+  Duration getStartOffsetLookBack() {
+    return startOffsetLookBack;
+  }
+
+  void setStartOffsetLookBack(Duration startOffsetLookBack) {
+    this.startOffsetLookBack = startOffsetLookBack;
+  }
+
+  CommitPolicy getCommitPolicy() {
+    return commitPolicy;
+  }
+
+  void setCommitPolicy(CommitPolicy commitPolicy) {
+    this.commitPolicy = commitPolicy;
+  }
+
+  RetentionPolicy getRetentionPolicy() {
+    return retentionPolicy;
+  }
+
+  void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+    this.retentionPolicy = retentionPolicy;
+  }
+
+  Path getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  void setSpillDirectory(Path spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
+  int getPartitionWorkers() {
+    return partitionWorkers;
+  }
+
+  void setPartitionWorkers(int partitionWorkers) {
+    this.partitionWorkers = partitionWorkers;
+  }
+
+  int getPartitionQueueCapacity() {
+    return partitionQueueCapacity;
+  }
+
+  void setPartitionQueueCapacity(int partitionQueueCapacity) {
+    this.partitionQueueCapacity = partitionQueueCapacity;
+  }
+
+  boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  Duration getReadinessTimeout() {
+    return readinessTimeout;
+  }
+
+  void setReadinessTimeout(Duration readinessTimeout) {
+    this.readinessTimeout = readinessTimeout;
+  }
+
+  boolean isManualAssignment() {
+    return manualAssignment;
+  }
+
+  void setManualAssignment(boolean manualAssignment) {
+    this.manualAssignment = manualAssignment;
+  }
+
+  Duration getPartitionRefreshInterval() {
+    return partitionRefreshInterval;
+  }
+
+  void setPartitionRefreshInterval(Duration partitionRefreshInterval) {
+    this.partitionRefreshInterval = partitionRefreshInterval;
+  }
+}
@@ -0,0 +1,45 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.List;
+
+/**
+ * Events with the same join key, one consumed by every consumer of {@link EventCorrelation}.
+ */
+public class CorrelatedEvents {
+
+  private final String key;
+  private final List<SerumKafkaConsumer<?>> consumers;
+  private final List<KafkaEventWrapper<?>> events;
+
+  CorrelatedEvents(String key, List<SerumKafkaConsumer<?>> consumers, List<KafkaEventWrapper<?>> events) {
+    this.key = key;
+    this.consumers = consumers;
+    this.events = List.copyOf(events);
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @param consumer - one of correlated consumers
+   * @param <T> - event type
+   * @return event of tuple consumed by given consumer
+   * @throws IllegalArgumentException if consumer was not correlated
+   */
+  @SuppressWarnings("unchecked")
+  public <T> KafkaEventWrapper<T> get(SerumKafkaConsumer<T> consumer) {
+    var index = consumers.indexOf(consumer);
+    if (index < 0) {
+      throw new IllegalArgumentException("Consumer of topic " + consumer.getTopic() + " was not correlated");
+    }
+    return (KafkaEventWrapper<T>) events.get(index);
+  }
+
+  /**
+   * @return events in order in which consumers were added to correlation
+   */
+  public List<KafkaEventWrapper<?>> getEvents() {
+    return events;
+  }
+}
@@ -0,0 +1,103 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Symmetric hash join of events consumed by several consumers. Every event is matched against partial tuple of its key
+ * as soon as it is stored, so the first complete tuple is found without scanning stored events again. Partial tuples
+ * are kept in insertion order and the oldest are evicted when their number exceeds the limit. Events may arrive
+ * concurrently from poll threads of different topics.
+ */
+class CorrelationJoin {
+
+  private final int sides;
+  private final String expectedKey;
+  private final CompletableFuture<Tuple> result = new CompletableFuture<>();
+  private final Map<String, KafkaEventWrapper<?>[]> partialTuples;
+  private long evictedTuples;
+
+  /**
+   * @param sides - number of consumers of correlated events, one tuple element per consumer
+   * @param maxPartialTuples - limit of keys with incomplete tuple
+   * @param expectedKey - key of expected tuple, null for any key
+   */
+  CorrelationJoin(int sides, int maxPartialTuples, String expectedKey) {
+    this.sides = sides;
+    this.expectedKey = expectedKey;
+    this.partialTuples = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, KafkaEventWrapper<?>[]> eldest) {
+        if (size() > maxPartialTuples) {
+          evictedTuples++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @param side - index of consumer which consumed event
+   * @param key - join key of event, null if event should not be correlated
+   * @param event - consumed event
+   */
+  synchronized void onEvent(int side, String key, KafkaEventWrapper<?> event) {
+    if (key == null || result.isDone() || expectedKey != null && !expectedKey.equals(key)) {
+      return;
+    }
+    var tuple = partialTuples.get(key);
+    if (tuple == null) {
+      tuple = new KafkaEventWrapper<?>[sides];
+      partialTuples.put(key, tuple);
+    }
+    if (tuple[side] != null) {
+      return;
+    }
+    tuple[side] = event;
+    if (Arrays.stream(tuple).allMatch(element -> element != null)) {
+      partialTuples.clear();
+      result.complete(new Tuple(key, Arrays.asList(tuple)));
+    }
+  }
+
+  /**
+   * @return future completed with the first complete tuple
+   */
+  CompletableFuture<Tuple> getResult() {
+    return result;
+  }
+
+  synchronized int getPartialTuplesCount() {
+    return partialTuples.size();
+  }
+
+  synchronized long getEvictedTuplesCount() {
+    return evictedTuples;
+  }
+
+  static class Tuple {
+
+    private final String key;
+    private final List<KafkaEventWrapper<?>> events;
+
+    private Tuple(String key, List<KafkaEventWrapper<?>> events) {
+      this.key = key;
+      this.events = events;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    /**
+     * @return events in order of sides
+     */
+    List<KafkaEventWrapper<?>> getEvents() {
+      return events;
+    }
+  }
+}
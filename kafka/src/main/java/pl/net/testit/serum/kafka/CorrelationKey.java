@@ -0,0 +1,44 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Join key extractors for {@link EventCorrelation}. Events for which extractor returns null are not correlated.
+ */
+public final class CorrelationKey {
+
+  private CorrelationKey() {
+  }
+
+  /**
+   * @param <T> - event type
+   * @return extractor of record key
+   */
+  public static <T> Function<KafkaEventWrapper<T>, String> recordKey() {
+    return KafkaEventWrapper::getKey;
+  }
+
+  /**
+   * @param headerName - header name
+   * @param <T> - event type
+   * @return extractor of value of the last header with given name
+   */
+  public static <T> Function<KafkaEventWrapper<T>, String> header(String headerName) {
+    return event -> event.getHeader(headerName).orElse(null);
+  }
+
+  /**
+   * Events which content cannot be deserialized are not correlated.
+   *
+   * @param field - returns field of event content
+   * @param <T> - event type
+   * @return extractor of string value of content field
+   */
+  public static <T> Function<KafkaEventWrapper<T>, String> field(Function<T, ?> field) {
+    return event -> {
+      var value = field.apply(event.getContent());
+      return value == null ? null : Objects.toString(value);
+    };
+  }
+}
@@ -0,0 +1,42 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts deserializations of event content performed by wrappers created by single consumer.
+ */
+class DeserializationCounter {
+
+  private final LongAdder ingested = new LongAdder();
+  private final LongAdder performed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LatencyHistogram durations = new LatencyHistogram();
+
+  void recordIngested() {
+    ingested.increment();
+  }
+
+  void recordSuccess(long durationNanos) {
+    performed.increment();
+    durations.recordNanos(durationNanos);
+  }
+
+  void recordFailure(long durationNanos) {
+    failed.increment();
+    durations.recordNanos(durationNanos);
+  }
+
+  /**
+   * @return time spent deserializing content, including failed attempts
+   */
+  LatencyStats getDurations() {
+    return durations.getStats();
+  }
+
+  DeserializationStats getStats() {
+    var performedCount = performed.sum();
+    var failedCount = failed.sum();
+    return new DeserializationStats(performedCount, failedCount,
+        Math.max(ingested.sum() - performedCount - failedCount, 0));
+  }
+}
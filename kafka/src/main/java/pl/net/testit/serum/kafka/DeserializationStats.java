@@ -0,0 +1,43 @@
+package pl.net.testit.serum.kafka;
+
+/**
+ * Snapshot of event content deserializations of single consumer.
+ */
+public class DeserializationStats {
+
+  private final long performed;
+  private final long failed;
+  private final long skipped;
+
+  DeserializationStats(long performed, long failed, long skipped) {
+    this.performed = performed;
+    this.failed = failed;
+    this.skipped = skipped;
+  }
+
+  /**
+   * @return number of successful deserializations
+   */
+  public long getPerformed() {
+    return performed;
+  }
+
+  /**
+   * @return number of records which value could not be deserialized to event class
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * @return number of consumed events which content was never requested
+   */
+  public long getSkipped() {
+    return skipped;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("deserializations performed: %d, failed: %d, skipped: %d", performed, failed, skipped);
+  }
+}
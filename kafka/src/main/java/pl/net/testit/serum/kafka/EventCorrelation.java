@@ -0,0 +1,147 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.awaitility.core.ConditionTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wait for events consumed by several consumers, usually of different topics, which share join key. Events are joined
+ * as they are stored by consumers, together with events already retained when wait starts, so wait completes as soon
+ * as every consumer has an event with the same key.
+ *
+ * <pre>
+ * var correlated = kafkaClient.correlate()
+ *     .on(orderConsumer, CorrelationKey.recordKey())
+ *     .on(paymentConsumer, CorrelationKey.field(payment -&gt; payment.orderId))
+ *     .waitForCorrelated(10);
+ * var payment = correlated.get(paymentConsumer);
+ * </pre>
+ */
+public class EventCorrelation {
+
+  private static final Logger log = LoggerFactory.getLogger(EventCorrelation.class);
+
+  private final List<Side<?>> sides = new ArrayList<>();
+  private int maxPartialTuples = 10000;
+
+  EventCorrelation() {
+  }
+
+  /**
+   * @param consumer - consumer of correlated events
+   * @param keyExtractor - returns join key of event, see {@link CorrelationKey}
+   * @param <T> - event type
+   * @return this correlation
+   */
+  public <T> EventCorrelation on(SerumKafkaConsumer<T> consumer, Function<KafkaEventWrapper<T>, String> keyExtractor) {
+    sides.add(new Side<>(consumer, keyExtractor));
+    return this;
+  }
+
+  /**
+   * Limit keys for which some but not all events were consumed. When exceeded, the oldest keys are forgotten, so their
+   * events are not correlated anymore. Defaults to 10000.
+   *
+   * @param maxPartialTuples - maximal number of keys with incomplete tuple
+   * @return this correlation
+   */
+  public EventCorrelation withMaxPartialTuples(int maxPartialTuples) {
+    if (maxPartialTuples < 1) {
+      throw new IllegalArgumentException("At least one partial tuple should be kept");
+    }
+    this.maxPartialTuples = maxPartialTuples;
+    return this;
+  }
+
+  /**
+   * @param durationInSeconds - wait timeout
+   * @return the first complete tuple of events with any key
+   */
+  public CorrelatedEvents waitForCorrelated(int durationInSeconds) {
+    return awaitCorrelated(durationInSeconds, null);
+  }
+
+  /**
+   * @param durationInSeconds - wait timeout
+   * @param key - join key
+   * @return the first complete tuple of events with given key
+   */
+  public CorrelatedEvents waitForCorrelated(int durationInSeconds, String key) {
+    return awaitCorrelated(durationInSeconds, key);
+  }
+
+  private CorrelatedEvents awaitCorrelated(int durationInSeconds, String key) {
+    if (sides.size() < 2) {
+      throw new IllegalStateException("At least two consumers should be correlated");
+    }
+    var topics = sides.stream().map(side -> side.consumer.getTopic()).collect(Collectors.toList());
+    var description = key == null ? "" : " with key " + key;
+    log.info("Waiting {} seconds for events correlated{} on topics: {}", durationInSeconds, description, topics);
+
+    var join = new CorrelationJoin(sides.size(), maxPartialTuples, key);
+    var observing = new ArrayList<Runnable>();
+    try {
+      for (int index = 0; index < sides.size(); index++) {
+        observing.add(sides.get(index).observe(join, index));
+      }
+      var tuple = join.getResult().get(durationInSeconds, TimeUnit.SECONDS);
+      log.info("Found events correlated by key {} on topics {}", tuple.getKey(), topics);
+      var consumers = sides.stream().<SerumKafkaConsumer<?>>map(side -> side.consumer).collect(Collectors.toList());
+      return new CorrelatedEvents(tuple.getKey(), consumers, tuple.getEvents());
+    } catch (TimeoutException e) {
+      throw new ConditionTimeoutException(String.format(
+          "Expected events correlated%s on topics %s within %d seconds. Partial tuples: %d, evicted: %d",
+          description, topics, durationInSeconds, join.getPartialTuplesCount(), join.getEvictedTuplesCount()));
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new KafkaClientException("Error when correlating events on topics " + topics, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while correlating events on topics " + topics, e);
+    } finally {
+      observing.forEach(Runnable::run);
+    }
+  }
+
+  private static class Side<T> {
+
+    private final SerumKafkaConsumer<T> consumer;
+    private final Function<KafkaEventWrapper<T>, String> keyExtractor;
+
+    private Side(SerumKafkaConsumer<T> consumer, Function<KafkaEventWrapper<T>, String> keyExtractor) {
+      this.consumer = consumer;
+      this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Observer belongs to single wait, so concurrent waits of the same correlation do not share it.
+     *
+     * @return action stopping observation
+     */
+    private Runnable observe(CorrelationJoin join, int index) {
+      Consumer<KafkaEventWrapper<T>> observer = event -> {
+        String key;
+        try {
+          key = keyExtractor.apply(event);
+        } catch (EventDeserializationException e) {
+          return;
+        } catch (RuntimeException e) {
+          join.getResult().completeExceptionally(e);
+          return;
+        }
+        join.onEvent(index, key, event);
+      };
+      consumer.observeEvents(observer);
+      return () -> consumer.stopObservingEvents(observer);
+    }
+  }
+}
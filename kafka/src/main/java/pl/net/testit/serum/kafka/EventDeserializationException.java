@@ -0,0 +1,8 @@
+package pl.net.testit.serum.kafka;
+
+public class EventDeserializationException extends KafkaClientException {
+
+  public EventDeserializationException(String message, Throwable ex) {
+    super(message, ex);
+  }
+}
@@ -0,0 +1,189 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+
+/**
+ * Hash index of events of single consumer by record key or by value of one header. Besides retained events it keeps
+ * waiters registered for a value, so ingested event is offered only to waiters of its own value.
+ *
+ * <p>Events are identified by ingestion sequence. Store evicts oldest events first, so event is retained as long as
+ * its sequence is not lower than sequence of the oldest retained event. Evicted events are dropped from index when
+ * their value is looked up and in batches when index grows twice as large as retained events. When store keeps
+ * events off-heap, index keeps only sequences and materializes events through store lookup, so indexed events are not
+ * pinned on heap. Not thread safe, consumer guards every call with lock of its store.
+ */
+class EventIndex<T> {
+
+  private static final int MIN_PRUNE_THRESHOLD = 1024;
+
+  private final String name;
+  private final Function<KafkaEventWrapper<T>, String> attribute;
+  private final LongFunction<KafkaEventWrapper<T>> lookup;
+  private final Map<String, List<IndexedEvent<T>>> events = new HashMap<>();
+  private final Map<String, List<EventWaiter<T>>> waiters = new HashMap<>();
+  private long indexedCount;
+  private long pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+  private EventIndex(String name, Function<KafkaEventWrapper<T>, String> attribute,
+      LongFunction<KafkaEventWrapper<T>> lookup) {
+    this.name = name;
+    this.attribute = attribute;
+    this.lookup = lookup;
+  }
+
+  static <T> EventIndex<T> byKey() {
+    return byKey(null);
+  }
+
+  /**
+   * @param lookup - store lookup of events by sequence, or null to keep references to indexed events
+   * @return index by record key
+   */
+  static <T> EventIndex<T> byKey(LongFunction<KafkaEventWrapper<T>> lookup) {
+    return new EventIndex<>("key", KafkaEventWrapper::getKey, lookup);
+  }
+
+  static <T> EventIndex<T> byHeader(String headerName) {
+    return byHeader(headerName, null);
+  }
+
+  /**
+   * @param headerName - name of indexed header
+   * @param lookup - store lookup of events by sequence, or null to keep references to indexed events
+   * @return index by header value
+   */
+  static <T> EventIndex<T> byHeader(String headerName, LongFunction<KafkaEventWrapper<T>> lookup) {
+    return new EventIndex<>("header " + headerName, event -> event.getHeader(headerName).orElse(null), lookup);
+  }
+
+  /**
+   * @param event - ingested event
+   * @param sequence - ingestion sequence of event
+   * @param firstRetainedSequence - sequence of the oldest event retained by store
+   */
+  void add(KafkaEventWrapper<T> event, long sequence, long firstRetainedSequence) {
+    var value = attribute.apply(event);
+    if (value == null) {
+      return;
+    }
+    var indexed = new IndexedEvent<>(lookup == null ? event : null, sequence);
+    events.computeIfAbsent(value, v -> new ArrayList<>()).add(indexed);
+    if (++indexedCount >= pruneThreshold) {
+      prune(firstRetainedSequence);
+    }
+
+    var valueWaiters = waiters.get(value);
+    if (valueWaiters != null) {
+      valueWaiters.removeIf(waiter -> waiter.offer(event));
+      if (valueWaiters.isEmpty()) {
+        waiters.remove(value);
+      }
+    }
+  }
+
+  /**
+   * @param value - indexed value
+   * @param firstRetainedSequence - sequence of the oldest event retained by store
+   * @return retained events with given value in ingestion order
+   */
+  List<KafkaEventWrapper<T>> find(String value, long firstRetainedSequence) {
+    var indexed = events.get(value);
+    if (indexed == null) {
+      return List.of();
+    }
+    var removed = indexed.size();
+    indexed.removeIf(event -> event.sequence < firstRetainedSequence);
+    removed -= indexed.size();
+    indexedCount -= removed;
+    if (indexed.isEmpty()) {
+      events.remove(value);
+      return List.of();
+    }
+    var result = new ArrayList<KafkaEventWrapper<T>>(indexed.size());
+    for (IndexedEvent<T> event : indexed) {
+      var retained = event.event != null ? event.event : lookup.apply(event.sequence);
+      if (retained != null) {
+        result.add(retained);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Register waiter for events with given value. Retained events with the value are offered to the waiter first.
+   *
+   * @param value - indexed value
+   * @param predicate - additional predicate events with the value have to match
+   * @param count - expected number of matching events
+   * @param firstRetainedSequence - sequence of the oldest event retained by store
+   * @return registered waiter
+   */
+  EventWaiter<T> register(String value, Predicate<KafkaEventWrapper<T>> predicate, int count,
+      long firstRetainedSequence) {
+    var waiter = new EventWaiter<>(predicate, count);
+    for (KafkaEventWrapper<T> event : find(value, firstRetainedSequence)) {
+      if (waiter.offer(event)) {
+        return waiter;
+      }
+    }
+    if (!waiter.isSatisfied()) {
+      waiters.computeIfAbsent(value, v -> new ArrayList<>()).add(waiter);
+    }
+    return waiter;
+  }
+
+  void unregister(String value, EventWaiter<T> waiter) {
+    var valueWaiters = waiters.get(value);
+    if (valueWaiters != null) {
+      valueWaiters.remove(waiter);
+      if (valueWaiters.isEmpty()) {
+        waiters.remove(value);
+      }
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long getIndexedCount() {
+    return indexedCount;
+  }
+
+  /**
+   * @return number of indexed events referenced directly by index instead of materialized through store lookup
+   */
+  long getReferencedEventCount() {
+    return events.values().stream().flatMap(List::stream).filter(event -> event.event != null).count();
+  }
+
+  private void prune(long firstRetainedSequence) {
+    var iterator = events.values().iterator();
+    while (iterator.hasNext()) {
+      var indexed = iterator.next();
+      indexed.removeIf(event -> event.sequence < firstRetainedSequence);
+      if (indexed.isEmpty()) {
+        iterator.remove();
+      }
+    }
+    indexedCount = events.values().stream().mapToLong(List::size).sum();
+    pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, indexedCount * 2);
+  }
+
+  private static class IndexedEvent<T> {
+
+    private final KafkaEventWrapper<T> event;
+    private final long sequence;
+
+    private IndexedEvent(KafkaEventWrapper<T> event, long sequence) {
+      this.event = event;
+      this.sequence = sequence;
+    }
+  }
+}
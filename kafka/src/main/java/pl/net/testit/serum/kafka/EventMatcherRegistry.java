@@ -0,0 +1,50 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Keeps pending waiters of a single consumer. Every ingested event is offered once to every pending waiter instead of
+ * re-scanning whole event buffer on each poll of the waiting thread.
+ */
+class EventMatcherRegistry<T> {
+
+  private final List<EventWaiter<T>> waiters = new ArrayList<>();
+
+  /**
+   * Register new waiter. Already buffered events are offered to the waiter before it starts receiving new ones. Caller
+   * must hold the same lock that guards {@link #onEvent(KafkaEventWrapper)} so no event is missed or offered twice.
+   *
+   * @param predicate - event predicate
+   * @param count - expected number of matching events
+   * @param exactCount - true if waiter should not complete when more than count buffered events match
+   * @param bufferedEvents - events ingested before registration
+   * @return registered waiter
+   */
+  EventWaiter<T> register(Predicate<KafkaEventWrapper<T>> predicate, int count, boolean exactCount,
+      Iterable<KafkaEventWrapper<T>> bufferedEvents) {
+    var waiter = new EventWaiter<>(predicate, count, exactCount);
+    for (KafkaEventWrapper<T> event : bufferedEvents) {
+      if (waiter.offerBuffered(event)) {
+        break;
+      }
+    }
+    if (!waiter.isSatisfied() && !waiter.isExceeded()) {
+      waiters.add(waiter);
+    }
+    return waiter;
+  }
+
+  void unregister(EventWaiter<T> waiter) {
+    waiters.remove(waiter);
+  }
+
+  void onEvent(KafkaEventWrapper<T> event) {
+    waiters.removeIf(waiter -> waiter.offer(event));
+  }
+
+  int size() {
+    return waiters.size();
+  }
+}
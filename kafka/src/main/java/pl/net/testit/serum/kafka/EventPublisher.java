@@ -0,0 +1,213 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hot publisher of events accepted by {@link SerumKafkaConsumer}. Every subscription buffers at most buffer size events
+ * waiting for demand. When buffer is full partitions of further events are paused on {@link TopicPoller} and resumed
+ * when subscriber drains buffer to half of its size, so slow subscriber slows down consumption instead of growing
+ * memory. Buffer can exceed its size by events of one poll which were already fetched when partitions were paused.
+ *
+ * <p>Publisher is terminated when it is completed or when its last subscription is cancelled or completed. Later
+ * subscribers are completed right away.
+ */
+class EventPublisher<T> implements Flow.Publisher<KafkaEventWrapper<T>> {
+
+  private static final Logger log = LoggerFactory.getLogger(EventPublisher.class);
+
+  private final TopicPoller poller;
+  private final int bufferSize;
+  private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean terminated = new AtomicBoolean();
+  private volatile boolean completed;
+  private volatile Runnable terminationListener;
+
+  EventPublisher(TopicPoller poller, int bufferSize) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("Buffer size should be positive, was " + bufferSize);
+    }
+    this.poller = poller;
+    this.bufferSize = bufferSize;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super KafkaEventWrapper<T>> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    var subscription = new EventSubscription(subscriber);
+    synchronized (this) {
+      subscriptions.add(subscription);
+    }
+    subscriber.onSubscribe(subscription);
+    if (completed) {
+      subscription.complete();
+    }
+  }
+
+  void onEvent(KafkaEventWrapper<T> event) {
+    subscriptions.forEach(subscription -> subscription.offer(event));
+  }
+
+  /**
+   * Signal completion to all subscribers once they received buffered events.
+   */
+  void complete() {
+    completed = true;
+    subscriptions.forEach(EventSubscription::complete);
+    terminate();
+  }
+
+  /**
+   * @param listener - action run once when publisher is terminated, it should stop passing events to publisher
+   */
+  void whenTerminated(Runnable listener) {
+    this.terminationListener = listener;
+  }
+
+  private void remove(EventSubscription subscription) {
+    boolean lastSubscription;
+    synchronized (this) {
+      lastSubscription = subscriptions.remove(subscription) && subscriptions.isEmpty();
+      if (lastSubscription) {
+        completed = true;
+      }
+    }
+    if (lastSubscription) {
+      terminate();
+    }
+  }
+
+  private void terminate() {
+    if (terminated.compareAndSet(false, true) && terminationListener != null) {
+      terminationListener.run();
+    }
+  }
+
+  int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  private class EventSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super KafkaEventWrapper<T>> subscriber;
+    private final Queue<KafkaEventWrapper<T>> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+    private final Set<Integer> overflowPartitions = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> pausedPartitions = ConcurrentHashMap.newKeySet();
+    private volatile boolean done;
+    private volatile boolean terminated;
+
+    private EventSubscription(Flow.Subscriber<? super KafkaEventWrapper<T>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        terminate();
+        subscriber.onError(new IllegalArgumentException("Requested events count should be positive, was " + n));
+        return;
+      }
+      demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      terminate();
+    }
+
+    private void offer(KafkaEventWrapper<T> event) {
+      if (terminated) {
+        return;
+      }
+      buffer.add(event);
+      if (buffered.incrementAndGet() >= bufferSize) {
+        overflowPartitions.add(event.getPartition());
+      }
+      drain();
+    }
+
+    private void complete() {
+      done = true;
+      drain();
+    }
+
+    /**
+     * Deliver buffered events up to demand and update paused partitions. Calls from poll thread and subscriber
+     * threads are serialized, only one of them delivers events at a time.
+     */
+    private void drain() {
+      if (pendingDrains.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        while (!terminated && demand.get() > 0) {
+          var event = buffer.poll();
+          if (event == null) {
+            break;
+          }
+          buffered.decrementAndGet();
+          if (demand.get() != Long.MAX_VALUE) {
+            demand.decrementAndGet();
+          }
+          try {
+            subscriber.onNext(event);
+          } catch (RuntimeException e) {
+            log.warn("Subscriber of topic {} failed, cancelling its subscription", poller.getTopic(), e);
+            terminate();
+          }
+        }
+        if (terminated) {
+          buffer.clear();
+        } else {
+          updatePausedPartitions();
+          if (done && buffer.isEmpty()) {
+            terminate();
+            subscriber.onComplete();
+          }
+        }
+      } while (pendingDrains.decrementAndGet() != 0);
+    }
+
+    private void updatePausedPartitions() {
+      if (buffered.get() > bufferSize / 2) {
+        for (Integer partition : overflowPartitions) {
+          if (pausedPartitions.add(partition)) {
+            log.debug("Pausing partition {} of topic {} until subscriber catches up", partition, poller.getTopic());
+            poller.pause(this, partition);
+          }
+        }
+      } else {
+        overflowPartitions.clear();
+        if (!pausedPartitions.isEmpty()) {
+          log.debug("Resuming partitions {} of topic {}", pausedPartitions, poller.getTopic());
+          pausedPartitions.clear();
+          poller.resume(this);
+        }
+      }
+    }
+
+    private void terminate() {
+      terminated = true;
+      remove(this);
+      if (!pausedPartitions.isEmpty()) {
+        pausedPartitions.clear();
+        poller.resume(this);
+      }
+    }
+  }
+}
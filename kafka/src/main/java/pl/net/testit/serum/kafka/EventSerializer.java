@@ -0,0 +1,34 @@
+package pl.net.testit.serum.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import pl.net.testit.serum.commons.json.JsonParseException;
+import pl.net.testit.serum.commons.json.JsonParser;
+
+/**
+ * Serializes events straight to UTF-8 json bytes with {@link JsonParser} object mapper, reusing writer and topic
+ * resolved once per event class.
+ */
+class EventSerializer {
+
+  private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, String> topics = new ConcurrentHashMap<>();
+
+  static String topicOf(Class<?> eventClass) {
+    return topics.computeIfAbsent(eventClass, cls -> Optional.ofNullable(cls.getAnnotation(KafkaEvent.class))
+        .map(KafkaEvent::topic)
+        .orElseThrow(() -> new KafkaClientException(cls.getName() + " should be annotated by KafkaEvent")));
+  }
+
+  static byte[] serialize(Object event) {
+    var writer = writers.computeIfAbsent(event.getClass(), cls -> JsonParser.getObjectMapper().writerFor(cls));
+    try {
+      return writer.writeValueAsBytes(event);
+    } catch (JsonProcessingException e) {
+      throw new JsonParseException("Cannot create Json from object.", e);
+    }
+  }
+}
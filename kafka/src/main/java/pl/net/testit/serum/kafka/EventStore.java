@@ -0,0 +1,32 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.function.LongFunction;
+
+/**
+ * Storage of events consumed by {@link SerumKafkaConsumer}. Implementations are not thread safe, consumer guards every
+ * call with its own lock.
+ */
+interface EventStore<T> extends Iterable<KafkaEventWrapper<T>> {
+
+  void add(KafkaEventWrapper<T> event);
+
+  int size();
+
+  long getEvictedCount();
+
+  long getRetainedBytes();
+
+  /**
+   * @return lookup of retained events by position counted from the first added event, when store keeps events
+   *     off-heap and indexes should keep positions instead of events, null otherwise
+   */
+  default LongFunction<KafkaEventWrapper<T>> positionLookup() {
+    return null;
+  }
+
+  /**
+   * Release resources held by store. Called when consumer unsubscribes.
+   */
+  default void close() {
+  }
+}
@@ -0,0 +1,102 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Single pending wait registered in {@link EventMatcherRegistry}. The predicate is evaluated once per event and the
+ * waiter completes as soon as the expected number of matching events was collected. Waiter expecting exact count
+ * never completes when more events than expected matched before its registration.
+ */
+class EventWaiter<T> {
+
+  private final Predicate<KafkaEventWrapper<T>> predicate;
+  private final int expectedCount;
+  private final boolean exactCount;
+  private final List<KafkaEventWrapper<T>> matchingEvents = new ArrayList<>();
+  private final CompletableFuture<List<KafkaEventWrapper<T>>> result = new CompletableFuture<>();
+
+  EventWaiter(Predicate<KafkaEventWrapper<T>> predicate, int expectedCount) {
+    this(predicate, expectedCount, false);
+  }
+
+  EventWaiter(Predicate<KafkaEventWrapper<T>> predicate, int expectedCount, boolean exactCount) {
+    this.predicate = predicate;
+    this.expectedCount = expectedCount;
+    this.exactCount = exactCount;
+  }
+
+  /**
+   * Evaluate predicate against event.
+   *
+   * @param event - newly ingested event
+   * @return true if waiter is completed and should not receive more events
+   */
+  boolean offer(KafkaEventWrapper<T> event) {
+    collect(event);
+    return isSatisfied();
+  }
+
+  /**
+   * Evaluate predicate against event buffered before registration. Waiter expecting exact count is not completed until
+   * all buffered events were offered.
+   *
+   * @param event - already buffered event
+   * @return true if remaining buffered events do not have to be offered
+   */
+  boolean offerBuffered(KafkaEventWrapper<T> event) {
+    if (!exactCount) {
+      return offer(event);
+    }
+    collect(event);
+    return result.isDone() || isExceeded();
+  }
+
+  /**
+   * @return true if waiter expecting exact count matched more events than expected and cannot complete anymore
+   */
+  boolean isExceeded() {
+    return exactCount && matchingEvents.size() > expectedCount;
+  }
+
+  /**
+   * Complete waiter if expected number of events was already collected.
+   *
+   * @return true if waiter is completed
+   */
+  boolean isSatisfied() {
+    if (!result.isDone() && !isExceeded() && matchingEvents.size() >= expectedCount) {
+      result.complete(List.copyOf(matchingEvents));
+    }
+    return result.isDone();
+  }
+
+  private void collect(KafkaEventWrapper<T> event) {
+    if (result.isDone()) {
+      return;
+    }
+    try {
+      if (predicate.test(event)) {
+        matchingEvents.add(event);
+      }
+    } catch (EventDeserializationException ex) {
+      // event which content cannot be deserialized does not match predicates checking content
+    } catch (RuntimeException ex) {
+      result.completeExceptionally(ex);
+    }
+  }
+
+  int getMatchedCount() {
+    return matchingEvents.size();
+  }
+
+  int getExpectedCount() {
+    return expectedCount;
+  }
+
+  CompletableFuture<List<KafkaEventWrapper<T>>> getResult() {
+    return result;
+  }
+}
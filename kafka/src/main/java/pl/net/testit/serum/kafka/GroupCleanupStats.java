@@ -0,0 +1,48 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of consumer group deletions issued by {@link SerumKafkaClient}.
+ */
+public class GroupCleanupStats {
+
+  private final long groupsDeleted;
+  private final long groupsFailed;
+  private final Duration timeSpent;
+
+  GroupCleanupStats(long groupsDeleted, long groupsFailed, Duration timeSpent) {
+    this.groupsDeleted = groupsDeleted;
+    this.groupsFailed = groupsFailed;
+    this.timeSpent = timeSpent;
+  }
+
+  /**
+   * @return groups deleted or already removed by broker
+   */
+  public long getGroupsDeleted() {
+    return groupsDeleted;
+  }
+
+  public long getGroupsFailed() {
+    return groupsFailed;
+  }
+
+  /**
+   * @return time from issuing delete request until all groups were deleted or failed
+   */
+  public Duration getTimeSpent() {
+    return timeSpent;
+  }
+
+  GroupCleanupStats add(GroupCleanupStats other) {
+    return new GroupCleanupStats(groupsDeleted + other.groupsDeleted, groupsFailed + other.groupsFailed,
+        timeSpent.plus(other.timeSpent));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("groups deleted: %d, failed: %d, time spent: %d ms", groupsDeleted, groupsFailed,
+        timeSpent.toMillis());
+  }
+}
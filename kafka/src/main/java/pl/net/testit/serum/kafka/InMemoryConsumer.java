@@ -0,0 +1,151 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Consumer reading {@link InMemoryKafkaTransport} topics. All partitions of subscribed topics are assigned to it on
+ * first poll after any of them exists, when rebalance listener is called as in kafka consumer. Partitions can be also
+ * assigned manually. Positions, pauses and commits are kept by {@link MockConsumer}. Topics are never created by
+ * consumer, partitions of deleted topics are read as empty.
+ */
+class InMemoryConsumer extends MockConsumer<String, byte[]> {
+
+  private static final int DEFAULT_MAX_POLL_RECORDS = 500;
+
+  private final InMemoryKafkaTransport transport;
+  private final String groupId;
+  private final int maxPollRecords;
+  private ConsumerRebalanceListener rebalanceListener;
+  private boolean assignmentPending;
+  private boolean joinedGroup;
+
+  InMemoryConsumer(InMemoryKafkaTransport transport, Properties properties) {
+    super(OffsetResetStrategy.valueOf(
+        properties.getProperty("auto.offset.reset", "latest").toUpperCase(Locale.ROOT)));
+    this.transport = transport;
+    this.groupId = properties.getProperty("group.id");
+    this.maxPollRecords = Integer.parseInt(
+        properties.getProperty("max.poll.records", String.valueOf(DEFAULT_MAX_POLL_RECORDS)));
+  }
+
+  @Override
+  public synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+    super.subscribe(topics, listener);
+    rebalanceListener = listener;
+    assignmentPending = true;
+    if (!joinedGroup && groupId != null) {
+      transport.joinGroup(groupId);
+      joinedGroup = true;
+    }
+  }
+
+  @Override
+  public synchronized void unsubscribe() {
+    super.unsubscribe();
+    leaveGroup();
+  }
+
+  @Override
+  public synchronized void close(Duration timeout) {
+    leaveGroup();
+    super.close(timeout);
+  }
+
+  @Override
+  public synchronized ConsumerRecords<String, byte[]> poll(Duration timeout) {
+    if (assignmentPending) {
+      assignPartitions();
+    }
+    var appendCount = transport.getAppendCount();
+    var records = fetch();
+    if (records.isEmpty() && !timeout.isZero()) {
+      transport.awaitAppend(appendCount, timeout);
+      records = fetch();
+    }
+    return new ConsumerRecords<>(records);
+  }
+
+  @Override
+  public synchronized List<PartitionInfo> partitionsFor(String topic) {
+    return transport.topicPartitions(topic).stream()
+        .map(partition -> new PartitionInfo(topic, partition.partition(), null, new Node[0], new Node[0]))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public synchronized Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(
+      Map<TopicPartition, Long> timestampsToSearch) {
+    var result = new HashMap<TopicPartition, OffsetAndTimestamp>();
+    timestampsToSearch.forEach((partition, timestamp) -> result.put(partition,
+        transport.partitionLog(partition).offsetForTime(timestamp)));
+    return result;
+  }
+
+  @Override
+  public synchronized Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+    return partitions.stream().collect(Collectors.toMap(Function.identity(), partition -> 0L));
+  }
+
+  @Override
+  public synchronized Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+    return partitions.stream()
+        .collect(Collectors.toMap(Function.identity(), partition -> transport.partitionLog(partition).endOffset()));
+  }
+
+  private void assignPartitions() {
+    var partitions = subscription().stream()
+        .flatMap(topic -> transport.topicPartitions(topic).stream())
+        .collect(Collectors.toList());
+    if (partitions.isEmpty()) {
+      return;
+    }
+    updateBeginningOffsets(beginningOffsets(partitions));
+    updateEndOffsets(endOffsets(partitions));
+    rebalance(partitions);
+    assignmentPending = false;
+    rebalanceListener.onPartitionsAssigned(partitions);
+  }
+
+  private Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> fetch() {
+    var records = new HashMap<TopicPartition, List<ConsumerRecord<String, byte[]>>>();
+    var remaining = maxPollRecords;
+    for (TopicPartition partition : new ArrayList<>(assignment())) {
+      if (remaining == 0 || paused().contains(partition)) {
+        continue;
+      }
+      var position = position(partition);
+      var fetched = transport.partitionLog(partition).read(position, remaining);
+      if (!fetched.isEmpty()) {
+        records.put(partition, fetched);
+        seek(partition, position + fetched.size());
+        remaining -= fetched.size();
+      }
+    }
+    return records;
+  }
+
+  private void leaveGroup() {
+    if (joinedGroup) {
+      transport.leaveGroup(groupId);
+      joinedGroup = false;
+    }
+  }
+}
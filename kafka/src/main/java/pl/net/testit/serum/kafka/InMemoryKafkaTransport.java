@@ -0,0 +1,307 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.GroupIdNotFoundException;
+import org.apache.kafka.common.errors.GroupNotEmptyException;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.InvalidPartitionsException;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * In-process kafka for tests which do not need real broker. Topics keep all records with partitions, offsets,
+ * timestamps and headers, records with key are partitioned by murmur2 hash of key as by kafka producer. Topics are
+ * created on first publish with default number of partitions, or upfront with {@link #createTopic(String, int)} or
+ * {@link SerumKafkaClient#createTopics(NewTopic...)}. Replication and topic configs are ignored. Consumer groups exist
+ * from first subscription until deleted. Records published before consumer subscribes have lower timestamp than its
+ * subscription time even within the same millisecond.
+ *
+ * <p>Share one instance between clients to let them exchange events:
+ * <pre>
+ * var transport = new InMemoryKafkaTransport();
+ * var kafkaClient = SerumKafkaClient.builder(transport).build();
+ * </pre>
+ */
+public class InMemoryKafkaTransport implements KafkaTransport {
+
+  private static final Node NODE = new Node(0, "in-memory", 0);
+
+  private final int defaultPartitions;
+  private final Map<String, List<PartitionLog>> topics = new ConcurrentHashMap<>();
+  private final Map<String, Integer> groupMembers = new HashMap<>();
+  private final AtomicInteger roundRobin = new AtomicInteger();
+  private final Object appendMonitor = new Object();
+  private final Object clockMonitor = new Object();
+  private long appendCount;
+  private long lastAppendedAt;
+  private long nextAppendAt;
+
+  public InMemoryKafkaTransport() {
+    this(1);
+  }
+
+  /**
+   * @param defaultPartitions - number of partitions of topics created on first use
+   */
+  public InMemoryKafkaTransport(int defaultPartitions) {
+    if (defaultPartitions < 1) {
+      throw new IllegalArgumentException("Topic should have at least one partition");
+    }
+    this.defaultPartitions = defaultPartitions;
+  }
+
+  /**
+   * @param topic - topic name
+   * @param partitions - number of partitions
+   * @return this transport
+   * @throws KafkaClientException if topic already exists
+   */
+  public InMemoryKafkaTransport createTopic(String topic, int partitions) {
+    if (partitions < 1) {
+      throw new IllegalArgumentException("Topic should have at least one partition");
+    }
+    if (topics.putIfAbsent(topic, createLogs(topic, partitions)) != null) {
+      throw new KafkaClientException("Topic " + topic + " already exists");
+    }
+    return this;
+  }
+
+  /**
+   * Add partitions to topic, creating it if it does not exist. Existing partitions keep their records.
+   *
+   * @param topic - topic name
+   * @param partitions - total number of partitions
+   * @return this transport
+   * @throws KafkaClientException if topic already has more partitions
+   */
+  public InMemoryKafkaTransport createPartitions(String topic, int partitions) {
+    topics.compute(topic, (name, logs) -> {
+      var existing = logs == null ? List.<PartitionLog>of() : logs;
+      if (partitions < existing.size()) {
+        throw new KafkaClientException(String.format("Topic %s already has %d partitions", topic, existing.size()));
+      }
+      var extended = new ArrayList<>(existing);
+      for (int partition = existing.size(); partition < partitions; partition++) {
+        extended.add(new PartitionLog(topic, partition));
+      }
+      return List.copyOf(extended);
+    });
+    return this;
+  }
+
+  /**
+   * @param topic - topic name
+   * @return number of records appended to each partition of topic, empty if topic does not exist
+   */
+  public Map<Integer, Long> getEndOffsets(String topic) {
+    var endOffsets = new LinkedHashMap<Integer, Long>();
+    var logs = topics.getOrDefault(topic, List.of());
+    for (int partition = 0; partition < logs.size(); partition++) {
+      endOffsets.put(partition, logs.get(partition).endOffset());
+    }
+    return endOffsets;
+  }
+
+  /**
+   * Records appended before this call have lower timestamp than returned time and records appended after it have the
+   * same or higher timestamp.
+   */
+  @Override
+  public long currentTimeMillis() {
+    synchronized (clockMonitor) {
+      var now = Math.max(lastAppendedAt + 1, System.currentTimeMillis());
+      nextAppendAt = Math.max(nextAppendAt, now);
+      return now;
+    }
+  }
+
+  @Override
+  public Producer<String, byte[]> createProducer(Properties properties) {
+    return new InMemoryProducer(this);
+  }
+
+  @Override
+  public Consumer<String, byte[]> createConsumer(Properties properties) {
+    return new InMemoryConsumer(this, properties);
+  }
+
+  @Override
+  public synchronized Map<String, CompletableFuture<Void>> deleteConsumerGroups(Collection<String> groupIds) {
+    var result = new HashMap<String, CompletableFuture<Void>>();
+    for (String groupId : groupIds) {
+      var members = groupMembers.get(groupId);
+      if (members == null) {
+        result.put(groupId, CompletableFuture.failedFuture(
+            new GroupIdNotFoundException("Group " + groupId + " does not exist")));
+      } else if (members > 0) {
+        result.put(groupId, CompletableFuture.failedFuture(
+            new GroupNotEmptyException("Group " + groupId + " has active members")));
+      } else {
+        groupMembers.remove(groupId);
+        result.put(groupId, CompletableFuture.completedFuture(null));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, CompletableFuture<Void>> createTopics(Collection<NewTopic> newTopics) {
+    var result = new HashMap<String, CompletableFuture<Void>>();
+    for (NewTopic newTopic : newTopics) {
+      var partitions = newTopic.replicasAssignments() != null ? newTopic.replicasAssignments().size()
+          : newTopic.numPartitions() < 0 ? defaultPartitions : newTopic.numPartitions();
+      if (partitions < 1) {
+        result.put(newTopic.name(), CompletableFuture.failedFuture(
+            new InvalidPartitionsException("Topic should have at least one partition")));
+      } else if (topics.putIfAbsent(newTopic.name(), createLogs(newTopic.name(), partitions)) != null) {
+        result.put(newTopic.name(), CompletableFuture.failedFuture(
+            new TopicExistsException("Topic " + newTopic.name() + " already exists")));
+      } else {
+        result.put(newTopic.name(), CompletableFuture.completedFuture(null));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, CompletableFuture<TopicDescription>> describeTopics(Collection<String> topicNames) {
+    var result = new HashMap<String, CompletableFuture<TopicDescription>>();
+    for (String topic : topicNames) {
+      var logs = topics.get(topic);
+      if (logs == null) {
+        result.put(topic, CompletableFuture.failedFuture(
+            new UnknownTopicOrPartitionException("Topic " + topic + " does not exist")));
+      } else {
+        var partitions = IntStream.range(0, logs.size())
+            .mapToObj(partition -> new TopicPartitionInfo(partition, NODE, List.of(NODE), List.of(NODE)))
+            .collect(Collectors.toList());
+        result.put(topic, CompletableFuture.completedFuture(new TopicDescription(topic, false, partitions)));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, CompletableFuture<Void>> deleteTopics(Collection<String> topicNames) {
+    var result = new HashMap<String, CompletableFuture<Void>>();
+    for (String topic : topicNames) {
+      result.put(topic, topics.remove(topic) == null
+          ? CompletableFuture.failedFuture(new UnknownTopicOrPartitionException("Topic " + topic + " does not exist"))
+          : CompletableFuture.completedFuture(null));
+    }
+    return result;
+  }
+
+  RecordMetadata append(ProducerRecord<String, byte[]> producerRecord) {
+    var logs = topics.computeIfAbsent(producerRecord.topic(), name -> createLogs(name, defaultPartitions));
+    var partition = producerRecord.partition() != null
+        ? producerRecord.partition()
+        : partitionOf(producerRecord.key(), logs.size());
+    if (partition < 0 || partition >= logs.size()) {
+      throw new IllegalArgumentException(String.format("Invalid partition %d of topic %s with %d partitions",
+          partition, producerRecord.topic(), logs.size()));
+    }
+    var timestamp = producerRecord.timestamp() != null ? producerRecord.timestamp() : appendTimestamp();
+    var record = logs.get(partition).append(producerRecord, timestamp);
+    synchronized (appendMonitor) {
+      appendCount++;
+      appendMonitor.notifyAll();
+    }
+    return new RecordMetadata(new TopicPartition(record.topic(), partition), record.offset(), 0, timestamp,
+        record.serializedKeySize(), record.serializedValueSize());
+  }
+
+  /**
+   * @return log of partition, or empty log not kept by transport if topic or partition does not exist
+   */
+  PartitionLog partitionLog(TopicPartition partition) {
+    var logs = topics.getOrDefault(partition.topic(), List.of());
+    return partition.partition() < logs.size()
+        ? logs.get(partition.partition())
+        : new PartitionLog(partition.topic(), partition.partition());
+  }
+
+  /**
+   * @return partitions of topic, empty if topic does not exist
+   */
+  List<TopicPartition> topicPartitions(String topic) {
+    return IntStream.range(0, topics.getOrDefault(topic, List.of()).size())
+        .mapToObj(partition -> new TopicPartition(topic, partition))
+        .collect(Collectors.toList());
+  }
+
+  long getAppendCount() {
+    synchronized (appendMonitor) {
+      return appendCount;
+    }
+  }
+
+  /**
+   * Block until any record is appended after given append count was read or timeout elapses.
+   */
+  void awaitAppend(long seenAppendCount, Duration timeout) {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    synchronized (appendMonitor) {
+      try {
+        long remaining;
+        while (appendCount == seenAppendCount && (remaining = deadline - System.nanoTime()) > 0) {
+          appendMonitor.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptException(e);
+      }
+    }
+  }
+
+  synchronized void joinGroup(String groupId) {
+    groupMembers.merge(groupId, 1, Integer::sum);
+  }
+
+  synchronized void leaveGroup(String groupId) {
+    groupMembers.computeIfPresent(groupId, (id, members) -> members - 1);
+  }
+
+  private long appendTimestamp() {
+    synchronized (clockMonitor) {
+      lastAppendedAt = Math.max(Math.max(lastAppendedAt, nextAppendAt), System.currentTimeMillis());
+      return lastAppendedAt;
+    }
+  }
+
+  private int partitionOf(String key, int partitions) {
+    var hash = key == null ? roundRobin.getAndIncrement() : Utils.murmur2(key.getBytes(StandardCharsets.UTF_8));
+    return Utils.toPositive(hash) % partitions;
+  }
+
+  private static List<PartitionLog> createLogs(String topic, int partitions) {
+    var logs = new ArrayList<PartitionLog>();
+    for (int partition = 0; partition < partitions; partition++) {
+      logs.add(new PartitionLog(topic, partition));
+    }
+    return List.copyOf(logs);
+  }
+}
@@ -0,0 +1,49 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+/**
+ * Producer appending records to {@link InMemoryKafkaTransport} topics. Records are acknowledged before send returns and
+ * callback is called on sending thread.
+ */
+class InMemoryProducer extends MockProducer<String, byte[]> {
+
+  private final InMemoryKafkaTransport transport;
+
+  InMemoryProducer(InMemoryKafkaTransport transport) {
+    super(true, new StringSerializer(), new ByteArraySerializer());
+    this.transport = transport;
+  }
+
+  @Override
+  public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record) {
+    return send(record, null);
+  }
+
+  @Override
+  public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+    if (closed()) {
+      throw new IllegalStateException("Producer is closed");
+    }
+    RecordMetadata metadata;
+    try {
+      metadata = transport.append(record);
+    } catch (RuntimeException ex) {
+      if (callback != null) {
+        callback.onCompletion(null, ex);
+      }
+      return CompletableFuture.failedFuture(ex);
+    }
+    if (callback != null) {
+      callback.onCompletion(metadata, null);
+    }
+    return CompletableFuture.completedFuture(metadata);
+  }
+}
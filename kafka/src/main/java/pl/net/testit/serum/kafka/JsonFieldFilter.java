@@ -0,0 +1,244 @@
+package pl.net.testit.serum.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Conditions defined by {@link KafkaEvent#where()} compiled once per event class. Conditions are evaluated by streaming
+ * json tokens of raw record value: subtrees not leading to any condition field are skipped and evaluation stops as soon
+ * as result is known, without binding record to event class.
+ */
+class JsonFieldFilter {
+
+  private static final Pattern CONDITION_PATTERN =
+      Pattern.compile("^\\s*\\$((?:\\.[^.\\s=!\\[]+)+)(?:\\s*(==|!=)\\s*|\\s+(in)\\s+)(.+?)\\s*$");
+  private static final ObjectMapper objectMapper = pl.net.testit.serum.commons.json.JsonParser.getObjectMapper();
+  private static final JsonFactory jsonFactory = objectMapper.getFactory();
+  private static final Map<Class<?>, JsonFieldFilter> eventClassFilters = new ConcurrentHashMap<>();
+
+  private final List<Condition> conditions;
+  private final PathNode root = new PathNode();
+
+  private JsonFieldFilter(List<Condition> conditions) {
+    this.conditions = conditions;
+    for (int i = 0; i < conditions.size(); i++) {
+      var node = root;
+      for (String field : conditions.get(i).path) {
+        node = node.children.computeIfAbsent(field, name -> new PathNode());
+      }
+      node.conditionIndexes.add(i);
+    }
+  }
+
+  /**
+   * @param eventClass - class annotated with {@link KafkaEvent}
+   * @return filter compiled from {@link KafkaEvent#where()} of event class, cached per class
+   * @throws KafkaClientException if any condition has invalid syntax
+   */
+  static JsonFieldFilter forEventClass(Class<?> eventClass) {
+    return eventClassFilters.computeIfAbsent(eventClass, cls -> {
+      var config = cls.getAnnotation(KafkaEvent.class);
+      return compile(config == null ? new String[0] : config.where());
+    });
+  }
+
+  static JsonFieldFilter compile(String... expressions) {
+    return new JsonFieldFilter(Arrays.stream(expressions).map(Condition::parse).collect(Collectors.toList()));
+  }
+
+  boolean isEmpty() {
+    return conditions.isEmpty();
+  }
+
+  /**
+   * @param json - raw record value
+   * @return true if all conditions are met, false if any is not met or value is not valid json object
+   */
+  boolean matches(byte[] json) {
+    if (conditions.isEmpty()) {
+      return true;
+    }
+
+    var evaluation = new Evaluation(conditions.size());
+    if (json != null) {
+      try (var parser = jsonFactory.createParser(json)) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          return false;
+        }
+        evaluateObject(parser, root, evaluation);
+      } catch (IOException e) {
+        return false;
+      }
+    }
+    return evaluation.result();
+  }
+
+  @Override
+  public String toString() {
+    return conditions.stream().map(condition -> condition.expression).collect(Collectors.joining(" && "));
+  }
+
+  /**
+   * @return true if evaluation is decided and parsing should stop
+   */
+  private boolean evaluateObject(JsonParser parser, PathNode node, Evaluation evaluation) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var child = node.children.get(parser.getCurrentName());
+      var valueToken = parser.nextToken();
+      if (child == null) {
+        parser.skipChildren();
+        continue;
+      }
+
+      for (int index : child.conditionIndexes) {
+        evaluation.decide(index, conditions.get(index).test(valueToken, parser));
+      }
+      if (evaluation.isDecided()) {
+        return true;
+      }
+
+      if (valueToken == JsonToken.START_OBJECT && !child.children.isEmpty()) {
+        if (evaluateObject(parser, child, evaluation)) {
+          return true;
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return false;
+  }
+
+  private class Evaluation {
+
+    private final byte[] results;
+    private int pending;
+    private boolean failed;
+
+    private Evaluation(int size) {
+      this.results = new byte[size];
+      this.pending = size;
+    }
+
+    private void decide(int index, boolean result) {
+      if (results[index] == 0) {
+        results[index] = (byte) (result ? 1 : -1);
+        pending--;
+        failed |= !result;
+      }
+    }
+
+    private boolean isDecided() {
+      return failed || pending == 0;
+    }
+
+    private boolean result() {
+      if (failed) {
+        return false;
+      }
+      for (int i = 0; i < results.length; i++) {
+        if (results[i] == 0 && !conditions.get(i).testMissing()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class PathNode {
+
+    private final Map<String, PathNode> children = new HashMap<>();
+    private final List<Integer> conditionIndexes = new ArrayList<>(1);
+  }
+
+  private static class Condition {
+
+    private final String expression;
+    private final List<String> path;
+    private final boolean negated;
+    private final List<JsonNode> values;
+
+    private Condition(String expression, List<String> path, boolean negated, List<JsonNode> values) {
+      this.expression = expression;
+      this.path = path;
+      this.negated = negated;
+      this.values = values;
+    }
+
+    private static Condition parse(String expression) {
+      var matcher = CONDITION_PATTERN.matcher(expression);
+      if (!matcher.matches()) {
+        throw new KafkaClientException("Invalid event condition: " + expression
+            + ". Expected: $.field == VALUE, $.field != VALUE or $.field in [VALUE, ...]");
+      }
+
+      var path = List.of(matcher.group(1).substring(1).split("\\."));
+      var operator = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+      JsonNode literal;
+      try {
+        literal = objectMapper.readTree(matcher.group(4));
+      } catch (JsonProcessingException e) {
+        throw new KafkaClientException("Invalid value in event condition: " + expression, e);
+      }
+
+      var values = new ArrayList<JsonNode>();
+      if (operator.equals("in")) {
+        if (!literal.isArray()) {
+          throw new KafkaClientException("Expected json array after 'in' in event condition: " + expression);
+        }
+        literal.forEach(values::add);
+      } else {
+        values.add(literal);
+      }
+      if (values.stream().anyMatch(JsonNode::isContainerNode)) {
+        throw new KafkaClientException("Only string, number, boolean and null values are supported in event "
+            + "condition: " + expression);
+      }
+      return new Condition(expression, path, operator.equals("!="), values);
+    }
+
+    private boolean test(JsonToken token, JsonParser parser) throws IOException {
+      var equal = false;
+      for (JsonNode value : values) {
+        if (tokenEquals(value, token, parser)) {
+          equal = true;
+          break;
+        }
+      }
+      return equal != negated;
+    }
+
+    private boolean testMissing() {
+      return values.stream().anyMatch(JsonNode::isNull) != negated;
+    }
+
+    private static boolean tokenEquals(JsonNode value, JsonToken token, JsonParser parser) throws IOException {
+      switch (token) {
+        case VALUE_STRING:
+          return value.isTextual() && value.textValue().equals(parser.getText());
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          return value.isNumber() && value.decimalValue().compareTo(parser.getDecimalValue()) == 0;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+          return value.isBoolean() && value.booleanValue() == (token == JsonToken.VALUE_TRUE);
+        case VALUE_NULL:
+          return value.isNull();
+        default:
+          return false;
+      }
+    }
+  }
+}
@@ -13,4 +13,16 @@ public @interface KafkaEvent {
 
   String filter() default "";
 
+  /**
+   * Conditions on fields of event json which all have to be met for event to be consumed. Supported conditions:
+   * <ul>
+   *   <li>{@code $.field.nested == VALUE}</li>
+   *   <li>{@code $.field.nested != VALUE}</li>
+   *   <li>{@code $.field.nested in [VALUE, VALUE]}</li>
+   * </ul>
+   * where VALUE is json literal: string in double quotes, number, true, false or null. Missing field is compared as
+   * null. Conditions are checked on raw record value before it is deserialized to event class.
+   */
+  String[] where() default {};
+
 }
@@ -0,0 +1,79 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+/**
+ * Event of class annotated with {@link KafkaEvent} together with record key, headers and target partition, published
+ * with {@link SerumKafkaClient#publish(KafkaEventRecord)}.
+ */
+public class KafkaEventRecord<T> {
+
+  private final T event;
+  private final Headers headers = new RecordHeaders();
+  private String key;
+  private Integer partition;
+  private Long timestamp;
+
+  private KafkaEventRecord(T event) {
+    this.event = event;
+  }
+
+  public static <T> KafkaEventRecord<T> of(T event) {
+    return new KafkaEventRecord<>(event);
+  }
+
+  public KafkaEventRecord<T> withKey(String key) {
+    this.key = key;
+    return this;
+  }
+
+  public KafkaEventRecord<T> withHeader(String name, String value) {
+    this.headers.add(name, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    return this;
+  }
+
+  public KafkaEventRecord<T> withHeader(String name, byte[] value) {
+    this.headers.add(name, value);
+    return this;
+  }
+
+  /**
+   * @param partition - target partition, when not set partition is chosen by producer partitioner
+   * @return this record
+   */
+  public KafkaEventRecord<T> withPartition(int partition) {
+    this.partition = partition;
+    return this;
+  }
+
+  /**
+   * @param timestamp - record timestamp in epoch millis, when not set producer sets current time
+   * @return this record
+   */
+  public KafkaEventRecord<T> withTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+    return this;
+  }
+
+  public T getEvent() {
+    return event;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public Headers getHeaders() {
+    return headers;
+  }
+
+  public Integer getPartition() {
+    return partition;
+  }
+
+  public Long getTimestamp() {
+    return timestamp;
+  }
+}
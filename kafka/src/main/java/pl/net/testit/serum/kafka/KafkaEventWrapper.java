@@ -1,22 +1,156 @@
 package pl.net.testit.serum.kafka;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.function.Function;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import pl.net.testit.serum.kafka.PublishedRecords.PublishTimes;
 
 public class KafkaEventWrapper<T> {
 
   private final ConsumerRecord<String, String> consumerRecord;
-  private final T content;
+  private final Function<String, T> contentDeserializer;
+  private final DeserializationCounter deserializationCounter;
+  private final long receivedAt;
+  private final PublishTimes publishTimes;
+  private volatile boolean contentLoaded;
+  private T content;
+  private EventDeserializationException deserializationError;
 
   public KafkaEventWrapper(ConsumerRecord<String, String> consumerRecord, T content) {
     this.consumerRecord = consumerRecord;
+    this.contentDeserializer = null;
+    this.deserializationCounter = null;
+    this.receivedAt = System.currentTimeMillis();
+    this.publishTimes = null;
     this.content = content;
+    this.contentLoaded = true;
+  }
+
+  KafkaEventWrapper(ConsumerRecord<String, String> consumerRecord, Function<String, T> contentDeserializer,
+      DeserializationCounter deserializationCounter) {
+    this(consumerRecord, contentDeserializer, deserializationCounter, System.currentTimeMillis(), null);
+  }
+
+  KafkaEventWrapper(ConsumerRecord<String, String> consumerRecord, Function<String, T> contentDeserializer,
+      DeserializationCounter deserializationCounter, long receivedAt, PublishTimes publishTimes) {
+    this.consumerRecord = consumerRecord;
+    this.contentDeserializer = contentDeserializer;
+    this.deserializationCounter = deserializationCounter;
+    this.receivedAt = receivedAt;
+    this.publishTimes = publishTimes;
   }
 
   public ConsumerRecord<String, String> getConsumerRecord() {
     return consumerRecord;
   }
 
+  /**
+   * Get event content. Content is deserialized on first access and cached, so predicates checking only key, headers
+   * or other record metadata do not pay for deserialization.
+   *
+   * @return deserialized event content
+   * @throws EventDeserializationException if record value cannot be deserialized to event class
+   */
   public T getContent() {
+    if (!contentLoaded) {
+      loadContent();
+    }
+    if (deserializationError != null) {
+      throw deserializationError;
+    }
     return content;
   }
+
+  /**
+   * @return true if content was already deserialized (successfully or not)
+   */
+  public boolean isContentLoaded() {
+    return contentLoaded;
+  }
+
+  public String getKey() {
+    return consumerRecord.key();
+  }
+
+  /**
+   * @param name - header name
+   * @return value of last header with given name decoded as UTF-8
+   */
+  public Optional<String> getHeader(String name) {
+    return Optional.ofNullable(consumerRecord.headers().lastHeader(name))
+        .filter(header -> header.value() != null)
+        .map(header -> new String(header.value(), StandardCharsets.UTF_8));
+  }
+
+  public int getPartition() {
+    return consumerRecord.partition();
+  }
+
+  public long getOffset() {
+    return consumerRecord.offset();
+  }
+
+  public long getTimestamp() {
+    return consumerRecord.timestamp();
+  }
+
+  public TimestampType getTimestampType() {
+    return consumerRecord.timestampType();
+  }
+
+  /**
+   * @return epoch millis when event was received by consumer
+   */
+  public long getReceivedAt() {
+    return receivedAt;
+  }
+
+  /**
+   * @return epoch millis when event was sent, present only for events published by the same client once broker
+   *     acknowledged them
+   */
+  public Optional<Long> getPublishedAt() {
+    return Optional.ofNullable(publishTimes).filter(PublishTimes::isPublished).map(PublishTimes::getSentAt);
+  }
+
+  /**
+   * @return epoch millis of broker acknowledgement, present only for events published by the same client
+   */
+  public Optional<Long> getAcknowledgedAt() {
+    return Optional.ofNullable(publishTimes).filter(PublishTimes::isPublished).map(PublishTimes::getAcknowledgedAt);
+  }
+
+  /**
+   * @return epoch millis when event was appended to log by broker: record timestamp for LogAppendTime topics or
+   *     acknowledgement time of events published by the same client
+   */
+  public Optional<Long> getBrokerTimestamp() {
+    if (consumerRecord.timestampType() == TimestampType.LOG_APPEND_TIME) {
+      return Optional.of(consumerRecord.timestamp());
+    }
+    return getAcknowledgedAt();
+  }
+
+  PublishTimes getPublishTimes() {
+    return publishTimes;
+  }
+
+  private synchronized void loadContent() {
+    if (contentLoaded) {
+      return;
+    }
+    var start = System.nanoTime();
+    try {
+      content = contentDeserializer.apply(consumerRecord.value());
+      deserializationCounter.recordSuccess(System.nanoTime() - start);
+    } catch (RuntimeException ex) {
+      deserializationError = new EventDeserializationException(String.format(
+          "Cannot deserialize event from topic %s partition %d offset %d", consumerRecord.topic(),
+          consumerRecord.partition(), consumerRecord.offset()), ex);
+      deserializationCounter.recordFailure(System.nanoTime() - start);
+    }
+    contentLoaded = true;
+  }
 }
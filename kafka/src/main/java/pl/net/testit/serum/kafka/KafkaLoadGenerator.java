@@ -0,0 +1,292 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes events of class annotated with {@link KafkaEvent} at target rate and measures end-to-end throughput and
+ * latency by consuming them back with {@link SerumKafkaConsumer} of the same client.
+ *
+ * <p>Load is open-loop: event number n is scheduled at start + n / rate regardless of how fast previous events were
+ * acknowledged. Latencies are measured from scheduled time, not from actual send time, so stalls of producer or broker
+ * are not hidden by delayed sends (coordinated omission).
+ */
+public class KafkaLoadGenerator<T> {
+
+  static final String RUN_ID_HEADER = "serum-load-run";
+  static final String SCHEDULED_AT_HEADER = "serum-load-scheduled-at";
+  private static final Logger log = LoggerFactory.getLogger(KafkaLoadGenerator.class);
+
+  private final SerumKafkaClient client;
+  private final Class<T> eventClass;
+  private final Function<Long, T> eventTemplate;
+  private Function<Long, String> keyTemplate = sequence -> null;
+  private double rate = 100;
+  private Duration duration = Duration.ofSeconds(10);
+  private Duration drainTimeout = Duration.ofSeconds(30);
+  private int producerThreads = 1;
+  private boolean measureEndToEnd = true;
+
+  private KafkaLoadGenerator(SerumKafkaClient client, Class<T> eventClass, Function<Long, T> eventTemplate) {
+    this.client = client;
+    this.eventClass = eventClass;
+    this.eventTemplate = eventTemplate;
+  }
+
+  /**
+   * @param client - client used to publish and consume events
+   * @param eventClass - class annotated with {@link KafkaEvent} defining target topic
+   * @param eventTemplate - creates event with given sequence number
+   * @param <T> - event type
+   * @return load generator with default settings: 100 events/s for 10 seconds from single thread
+   */
+  public static <T> KafkaLoadGenerator<T> of(SerumKafkaClient client, Class<T> eventClass,
+      Function<Long, T> eventTemplate) {
+    return new KafkaLoadGenerator<>(client, eventClass, eventTemplate);
+  }
+
+  /**
+   * @param eventsPerSecond - target rate of published events, should be positive
+   * @return this generator
+   * @throws IllegalArgumentException if rate is not positive or not finite
+   */
+  public KafkaLoadGenerator<T> withRate(double eventsPerSecond) {
+    if (!(eventsPerSecond > 0) || Double.isInfinite(eventsPerSecond)) {
+      throw new IllegalArgumentException("Rate should be positive and finite, was " + eventsPerSecond);
+    }
+    this.rate = eventsPerSecond;
+    return this;
+  }
+
+  /**
+   * @param duration - how long events are published, should be positive
+   * @return this generator
+   * @throws IllegalArgumentException if duration is zero or negative
+   */
+  public KafkaLoadGenerator<T> withDuration(Duration duration) {
+    Objects.requireNonNull(duration, "duration");
+    if (duration.isNegative() || duration.isZero()) {
+      throw new IllegalArgumentException("Duration should be positive, was " + duration);
+    }
+    this.duration = duration;
+    return this;
+  }
+
+  /**
+   * @param producerThreads - number of threads publishing events, should be positive
+   * @return this generator
+   * @throws IllegalArgumentException if producerThreads is less than 1
+   */
+  public KafkaLoadGenerator<T> withProducerThreads(int producerThreads) {
+    if (producerThreads < 1) {
+      throw new IllegalArgumentException("At least one producer thread should be used, was " + producerThreads);
+    }
+    this.producerThreads = producerThreads;
+    return this;
+  }
+
+  public KafkaLoadGenerator<T> withKey(Function<Long, String> keyTemplate) {
+    this.keyTemplate = keyTemplate;
+    return this;
+  }
+
+  /**
+   * @param drainTimeout - how long to wait for acknowledgements of sent events, and then for acknowledged events to be
+   *     consumed, after publishing finished
+   * @return this generator
+   * @throws IllegalArgumentException if drain timeout is negative
+   */
+  public KafkaLoadGenerator<T> withDrainTimeout(Duration drainTimeout) {
+    Objects.requireNonNull(drainTimeout, "drainTimeout");
+    if (drainTimeout.isNegative()) {
+      throw new IllegalArgumentException("Drain timeout should not be negative, was " + drainTimeout);
+    }
+    this.drainTimeout = drainTimeout;
+    return this;
+  }
+
+  /**
+   * @param measureEndToEnd - when false generated events are not consumed back and only acknowledgements are measured
+   * @return this generator
+   */
+  public KafkaLoadGenerator<T> withEndToEndMeasurement(boolean measureEndToEnd) {
+    this.measureEndToEnd = measureEndToEnd;
+    return this;
+  }
+
+  /**
+   * Publish events and wait until they are acknowledged and, if end-to-end measurement is enabled, consumed.
+   *
+   * @return summary of the run
+   */
+  public LoadTestSummary run() {
+    var runId = UUID.randomUUID().toString();
+    var totalEvents = (long) Math.ceil(rate * duration.toNanos() / 1e9);
+    var run = new Run(runId);
+
+    SerumKafkaConsumer<T> consumer = null;
+    Consumer<KafkaEventWrapper<T>> listener = run::onEventReceived;
+    if (measureEndToEnd) {
+      // events are recognised by run header, class filters could drop events of templates not matching them
+      consumer = client.subscribeUnfiltered(eventClass, RetentionPolicy.maxCount(1)).setLogAllEvents(false);
+      consumer.addEventListener(listener);
+      // events published before poller is positioned could fall before its start offset
+      consumer.awaitReady();
+    }
+
+    log.info("Starting load of {} {} events at {} events/s from {} threads", totalEvents, eventClass.getSimpleName(),
+        rate, producerThreads);
+    var executor = Executors.newFixedThreadPool(producerThreads, r -> {
+      var thread = new Thread(r, "serum-load-" + runId.substring(0, 8));
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      var startNanos = System.nanoTime();
+      var startMillis = System.currentTimeMillis();
+      publish(executor, run, totalEvents, startNanos, startMillis);
+      run.publishingElapsedNanos = System.nanoTime() - startNanos;
+      if (measureEndToEnd) {
+        run.awaitReceived(drainTimeout);
+      }
+      run.totalElapsedNanos = System.nanoTime() - startNanos;
+    } finally {
+      executor.shutdownNow();
+      if (consumer != null) {
+        consumer.removeEventListener(listener);
+        consumer.unsubscribe();
+      }
+    }
+
+    var summary = run.summary(totalEvents);
+    log.info("Load finished: {}", summary.toJson());
+    return summary;
+  }
+
+  private void publish(ExecutorService executor, Run run, long totalEvents, long startNanos, long startMillis) {
+    var intervalNanos = 1e9 / rate;
+    var tasks = new ArrayList<Future<?>>();
+    for (int thread = 0; thread < producerThreads; thread++) {
+      var firstSequence = thread;
+      tasks.add(executor.submit(() -> {
+        for (long sequence = firstSequence; sequence < totalEvents; sequence += producerThreads) {
+          var scheduledOffsetNanos = (long) (sequence * intervalNanos);
+          var scheduledNanos = startNanos + scheduledOffsetNanos;
+          long delay;
+          while ((delay = scheduledNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+          }
+          run.sendDelays.recordNanos(-delay);
+          send(run, sequence, scheduledNanos, startMillis + scheduledOffsetNanos / 1_000_000);
+        }
+      }));
+    }
+
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+      run.awaitAcknowledged(totalEvents, drainTimeout);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while generating load", e);
+    } catch (ExecutionException e) {
+      throw new KafkaClientException("Error when generating load", e.getCause());
+    }
+  }
+
+  private void send(Run run, long sequence, long scheduledNanos, long scheduledMillis) {
+    var eventRecord = KafkaEventRecord.of(eventTemplate.apply(sequence))
+        .withKey(keyTemplate.apply(sequence))
+        .withHeader(RUN_ID_HEADER, run.runId)
+        .withHeader(SCHEDULED_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(scheduledMillis).array());
+    client.sendQuietly(eventRecord).whenComplete((metadata, ex) -> {
+      if (ex == null) {
+        run.ackLatencies.recordNanos(System.nanoTime() - scheduledNanos);
+        run.acknowledged.increment();
+      } else {
+        run.failed.increment();
+      }
+    });
+    run.sent.increment();
+  }
+
+  private class Run {
+
+    private final String runId;
+    private final byte[] runIdBytes;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LatencyHistogram sendDelays = new LatencyHistogram();
+    private final LatencyHistogram ackLatencies = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatencies = new LatencyHistogram();
+    private long publishingElapsedNanos;
+    private long totalElapsedNanos;
+
+    private Run(String runId) {
+      this.runId = runId;
+      this.runIdBytes = runId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void onEventReceived(KafkaEventWrapper<T> event) {
+      var headers = event.getConsumerRecord().headers();
+      var runHeader = headers.lastHeader(RUN_ID_HEADER);
+      var scheduledAtHeader = headers.lastHeader(SCHEDULED_AT_HEADER);
+      if (runHeader == null || scheduledAtHeader == null || !Arrays.equals(runHeader.value(), runIdBytes)) {
+        return;
+      }
+      var scheduledAt = ByteBuffer.wrap(scheduledAtHeader.value()).getLong();
+      endToEndLatencies.recordMillis(event.getReceivedAt() - scheduledAt);
+      received.increment();
+    }
+
+    private void awaitAcknowledged(long totalEvents, Duration timeout) throws InterruptedException {
+      var deadline = System.nanoTime() + timeout.toNanos();
+      while (acknowledged.sum() + failed.sum() < totalEvents) {
+        if (System.nanoTime() >= deadline) {
+          log.warn("{} of {} sent events not acknowledged within {}", totalEvents - acknowledged.sum() - failed.sum(),
+              totalEvents, timeout);
+          return;
+        }
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+    }
+
+    private void awaitReceived(Duration timeout) {
+      var deadline = System.nanoTime() + timeout.toNanos();
+      try {
+        while (received.sum() < acknowledged.sum() && System.nanoTime() < deadline) {
+          TimeUnit.MILLISECONDS.sleep(10);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new KafkaClientException("Interrupted while waiting for generated events", e);
+      }
+    }
+
+    private LoadTestSummary summary(long totalEvents) {
+      return new LoadTestSummary(runId, EventSerializer.topicOf(eventClass), rate, duration, producerThreads,
+          totalEvents, sent.sum(), acknowledged.sum(), failed.sum(), measureEndToEnd ? received.sum() : -1,
+          Duration.ofNanos(publishingElapsedNanos), Duration.ofNanos(totalElapsedNanos), sendDelays.getStats(),
+          ackLatencies.getStats(), endToEndLatencies.getStats());
+    }
+  }
+}
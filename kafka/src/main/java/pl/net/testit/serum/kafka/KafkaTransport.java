@@ -0,0 +1,68 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+
+/**
+ * Creates kafka clients used by {@link SerumKafkaClient}. By default clients connect to broker, use
+ * {@link InMemoryKafkaTransport} to run tests without broker.
+ */
+public interface KafkaTransport {
+
+  /**
+   * @param properties - producer properties configured by {@link SerumKafkaClientBuilder}
+   * @return producer of records with string keys and raw values
+   */
+  Producer<String, byte[]> createProducer(Properties properties);
+
+  /**
+   * @param properties - consumer properties configured by {@link SerumKafkaClientBuilder}, including group.id
+   * @return consumer of records with string keys and raw values
+   */
+  Consumer<String, byte[]> createConsumer(Properties properties);
+
+  /**
+   * @param groupIds - ids of consumer groups to delete
+   * @return deletion result per group id
+   */
+  Map<String, CompletableFuture<Void>> deleteConsumerGroups(Collection<String> groupIds);
+
+  /**
+   * @param topics - topics to create
+   * @return creation result per topic name
+   */
+  Map<String, CompletableFuture<Void>> createTopics(Collection<NewTopic> topics);
+
+  /**
+   * @param topics - names of topics to describe
+   * @return description of partitions and their leaders per topic name
+   */
+  Map<String, CompletableFuture<TopicDescription>> describeTopics(Collection<String> topics);
+
+  /**
+   * @param topics - names of topics to delete
+   * @return deletion result per topic name
+   */
+  Map<String, CompletableFuture<Void>> deleteTopics(Collection<String> topics);
+
+  /**
+   * Time taken as subscription time of consumers and start timestamp of topic pollers.
+   *
+   * @return current time in milliseconds
+   */
+  default long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Release resources of transport. Called by client only for transport it created itself.
+   */
+  default void close() {
+  }
+}
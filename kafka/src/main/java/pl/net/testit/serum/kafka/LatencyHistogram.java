@@ -0,0 +1,98 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of latencies with microsecond resolution. Every power of two range is split into 32
+ * buckets, so percentiles are reported with relative error below 3.2% using fixed 11 KB of memory regardless of
+ * number of recorded samples.
+ */
+class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_SHIFT = 40;
+  private static final int BUCKETS = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator minMicros = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+  void record(Duration latency) {
+    recordNanos(latency.toNanos());
+  }
+
+  void recordMillis(long latencyMillis) {
+    recordNanos(latencyMillis * 1_000_000);
+  }
+
+  /**
+   * @param latencyNanos - latency in nanoseconds, negative values caused by clock differences are recorded as 0
+   */
+  void recordNanos(long latencyNanos) {
+    var micros = Math.max(latencyNanos, 0) / 1000;
+    counts.incrementAndGet(bucketIndex(micros));
+    totalCount.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulate(micros);
+    minMicros.accumulate(micros);
+  }
+
+  LatencyStats getStats() {
+    var count = totalCount.sum();
+    if (count == 0) {
+      return LatencyStats.EMPTY;
+    }
+    var max = maxMicros.get();
+    return new LatencyStats(count, minMicros.get(), max, totalMicros.sum() / count,
+        percentile(50, count, max), percentile(95, count, max), percentile(99, count, max),
+        percentile(99.9, count, max));
+  }
+
+  /**
+   * @param percentile - percentile from range 0-100
+   * @return upper bound of bucket holding given percentile of recorded latencies, zero if nothing was recorded
+   */
+  Duration getPercentile(double percentile) {
+    var count = totalCount.sum();
+    if (count == 0) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(percentile(percentile, count, maxMicros.get()) * 1000);
+  }
+
+  private long percentile(double percentile, long count, long max) {
+    var target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(bucketUpperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < 2 * SUB_BUCKETS) {
+      return (int) micros;
+    }
+    var shift = Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros) - 1 - SUB_BUCKET_BITS, MAX_SHIFT);
+    var mantissa = Math.min(micros >>> shift, 2 * SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + (int) (mantissa - SUB_BUCKETS);
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    var shift = index / SUB_BUCKETS - 1;
+    var mantissa = SUB_BUCKETS + index % SUB_BUCKETS;
+    return ((long) (mantissa + 1) << shift) - 1;
+  }
+}
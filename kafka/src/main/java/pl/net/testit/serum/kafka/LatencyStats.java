@@ -0,0 +1,71 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of latency histogram. Percentiles are approximated with relative error below 3.2%.
+ */
+public class LatencyStats {
+
+  static final LatencyStats EMPTY = new LatencyStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+  private final long count;
+  private final long minMicros;
+  private final long maxMicros;
+  private final long meanMicros;
+  private final long p50Micros;
+  private final long p95Micros;
+  private final long p99Micros;
+  private final long p999Micros;
+
+  LatencyStats(long count, long minMicros, long maxMicros, long meanMicros, long p50Micros, long p95Micros,
+      long p99Micros, long p999Micros) {
+    this.count = count;
+    this.minMicros = minMicros;
+    this.maxMicros = maxMicros;
+    this.meanMicros = meanMicros;
+    this.p50Micros = p50Micros;
+    this.p95Micros = p95Micros;
+    this.p99Micros = p99Micros;
+    this.p999Micros = p999Micros;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public Duration getMin() {
+    return Duration.ofNanos(minMicros * 1000);
+  }
+
+  public Duration getMax() {
+    return Duration.ofNanos(maxMicros * 1000);
+  }
+
+  public Duration getMean() {
+    return Duration.ofNanos(meanMicros * 1000);
+  }
+
+  public Duration getP50() {
+    return Duration.ofNanos(p50Micros * 1000);
+  }
+
+  public Duration getP95() {
+    return Duration.ofNanos(p95Micros * 1000);
+  }
+
+  public Duration getP99() {
+    return Duration.ofNanos(p99Micros * 1000);
+  }
+
+  public Duration getP999() {
+    return Duration.ofNanos(p999Micros * 1000);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count: %d, min: %.2f ms, mean: %.2f ms, p50: %.2f ms, p95: %.2f ms, p99: %.2f ms, "
+            + "p99.9: %.2f ms, max: %.2f ms", count, minMicros / 1e3, meanMicros / 1e3, p50Micros / 1e3,
+        p95Micros / 1e3, p99Micros / 1e3, p999Micros / 1e3, maxMicros / 1e3);
+  }
+}
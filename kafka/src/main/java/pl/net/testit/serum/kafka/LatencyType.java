@@ -0,0 +1,25 @@
+package pl.net.testit.serum.kafka;
+
+/**
+ * Latencies measured by {@link SerumKafkaConsumer}. Kafka record carries single timestamp, set by producer or by broker
+ * depending on topic message.timestamp.type, so broker time is taken from record timestamp for LogAppendTime topics
+ * and from acknowledgement time for CreateTime topics when event was published by the same {@link SerumKafkaClient}.
+ */
+public enum LatencyType {
+
+  /**
+   * From sending event to broker acknowledgement. Measured only for events published by the same client.
+   */
+  PRODUCE_TO_BROKER,
+
+  /**
+   * From broker (or producer for CreateTime topics with events published by other clients) timestamp to receiving
+   * event by consumer.
+   */
+  BROKER_TO_CONSUMER,
+
+  /**
+   * From sending event to being matched by consumer wait. Measured only for events published by the same client.
+   */
+  PUBLISH_TO_MATCH
+}
@@ -0,0 +1,155 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import pl.net.testit.serum.commons.json.JsonParser;
+
+/**
+ * Result of {@link KafkaLoadGenerator} run. Use {@link #toJson()} to get machine-readable form with durations in
+ * milliseconds.
+ */
+public class LoadTestSummary {
+
+  private final String runId;
+  private final String topic;
+  private final double targetRate;
+  private final Duration targetDuration;
+  private final int producerThreads;
+  private final long scheduled;
+  private final long sent;
+  private final long acknowledged;
+  private final long failed;
+  private final long received;
+  private final Duration publishingElapsed;
+  private final Duration totalElapsed;
+  private final LatencyStats sendDelay;
+  private final LatencyStats ackLatency;
+  private final LatencyStats endToEndLatency;
+
+  LoadTestSummary(String runId, String topic, double targetRate, Duration targetDuration, int producerThreads,
+      long scheduled, long sent, long acknowledged, long failed, long received, Duration publishingElapsed,
+      Duration totalElapsed, LatencyStats sendDelay, LatencyStats ackLatency, LatencyStats endToEndLatency) {
+    this.runId = runId;
+    this.topic = topic;
+    this.targetRate = targetRate;
+    this.targetDuration = targetDuration;
+    this.producerThreads = producerThreads;
+    this.scheduled = scheduled;
+    this.sent = sent;
+    this.acknowledged = acknowledged;
+    this.failed = failed;
+    this.received = received;
+    this.publishingElapsed = publishingElapsed;
+    this.totalElapsed = totalElapsed;
+    this.sendDelay = sendDelay;
+    this.ackLatency = ackLatency;
+    this.endToEndLatency = endToEndLatency;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  public long getSent() {
+    return sent;
+  }
+
+  public long getAcknowledged() {
+    return acknowledged;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * @return number of generated events consumed back, -1 if end-to-end measurement was disabled
+   */
+  public long getReceived() {
+    return received;
+  }
+
+  /**
+   * @return acknowledged events per second of publishing time
+   */
+  public double getAchievedRate() {
+    return perSecond(acknowledged, publishingElapsed);
+  }
+
+  /**
+   * @return received events per second of whole run including drain
+   */
+  public double getReceiveThroughput() {
+    return received < 0 ? 0 : perSecond(received, totalElapsed);
+  }
+
+  /**
+   * @return how late events were sent comparing to schedule
+   */
+  public LatencyStats getSendDelay() {
+    return sendDelay;
+  }
+
+  /**
+   * @return time from scheduled send to broker acknowledgement
+   */
+  public LatencyStats getAckLatency() {
+    return ackLatency;
+  }
+
+  /**
+   * @return time from scheduled send to receiving event by consumer
+   */
+  public LatencyStats getEndToEndLatency() {
+    return endToEndLatency;
+  }
+
+  public String toJson() {
+    var json = new LinkedHashMap<String, Object>();
+    json.put("runId", runId);
+    json.put("topic", topic);
+    json.put("targetRate", targetRate);
+    json.put("targetDurationMs", targetDuration.toMillis());
+    json.put("producerThreads", producerThreads);
+    json.put("scheduled", scheduled);
+    json.put("sent", sent);
+    json.put("acknowledged", acknowledged);
+    json.put("failed", failed);
+    json.put("received", received);
+    json.put("publishingElapsedMs", publishingElapsed.toMillis());
+    json.put("totalElapsedMs", totalElapsed.toMillis());
+    json.put("achievedRate", getAchievedRate());
+    json.put("receiveThroughput", getReceiveThroughput());
+    json.put("sendDelay", toMap(sendDelay));
+    json.put("ackLatency", toMap(ackLatency));
+    json.put("endToEndLatency", toMap(endToEndLatency));
+    return JsonParser.toInlineJSON(json);
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+
+  private static Map<String, Object> toMap(LatencyStats stats) {
+    var map = new LinkedHashMap<String, Object>();
+    map.put("count", stats.getCount());
+    map.put("minMs", millis(stats.getMin()));
+    map.put("meanMs", millis(stats.getMean()));
+    map.put("p50Ms", millis(stats.getP50()));
+    map.put("p95Ms", millis(stats.getP95()));
+    map.put("p99Ms", millis(stats.getP99()));
+    map.put("p999Ms", millis(stats.getP999()));
+    map.put("maxMs", millis(stats.getMax()));
+    return map;
+  }
+
+  private static double millis(Duration duration) {
+    return duration.toNanos() / 1e6;
+  }
+
+  private static double perSecond(long count, Duration elapsed) {
+    return elapsed.isZero() ? 0 : count / (elapsed.toNanos() / 1e9);
+  }
+}
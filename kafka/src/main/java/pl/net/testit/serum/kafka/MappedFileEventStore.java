@@ -0,0 +1,318 @@
+package pl.net.testit.serum.kafka;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.net.testit.serum.kafka.PublishedRecords.PublishTimes;
+
+/**
+ * Event store appending every consumed record to memory-mapped segment files. Only position of each record is kept
+ * on-heap, {@link KafkaEventWrapper} objects are materialized from segment when events are iterated or looked up by
+ * index. The last {@value #MATERIALIZED_CACHE_SIZE} materialized wrappers are cached, so repeated waits on recent
+ * events do not deserialize content again. All events are retained for the whole subscription lifetime and segment
+ * files are left on disk after store is closed, so they can be analysed after test with {@link SpillSegmentReader}.
+ *
+ * <p>Record layout is described by {@link SpillSegmentReader}. End marker is written after every record and each
+ * segment is truncated to its written length on close. Publish times of events consumed before their acknowledgement
+ * are kept on-heap until they are filled in, then they are written to segment. At most
+ * {@value #MAX_PENDING_PUBLISH_TIMES} of them are kept, the oldest belong to records of other producers which are
+ * never acknowledged.
+ *
+ * <p>Segment files are created on first added event. First segment is small and every next one is twice as large, up
+ * to segment size, so consumers of few events do not map whole segment. Events added after store is closed are
+ * ignored.
+ */
+class MappedFileEventStore<T> implements EventStore<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedFileEventStore.class);
+
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  static final int INITIAL_SEGMENT_SIZE = 1024 * 1024;
+  static final int MAX_PENDING_PUBLISH_TIMES = 100_000;
+  static final int MATERIALIZED_CACHE_SIZE = 256;
+  private static final int PUBLISH_TIMES_POSITION = Integer.BYTES + Long.BYTES * 3 + 1;
+  private static final int SEGMENT_BITS = 24;
+  private static final long POSITION_MASK = (1L << (Long.SIZE - SEGMENT_BITS)) - 1;
+
+  private final Path directory;
+  private final String filePrefix;
+  private final String topic;
+  private final int segmentSize;
+  private final Materializer<T> materializer;
+  private final List<Segment> segments = new ArrayList<>();
+  private long[] index = new long[1024];
+  private final Map<Integer, KafkaEventWrapper<T>> materialized = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, KafkaEventWrapper<T>> eldest) {
+      return size() > MATERIALIZED_CACHE_SIZE;
+    }
+  };
+  private final Map<Integer, PublishTimes> pendingPublishTimes = new LinkedHashMap<>(16, 0.75f, false) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, PublishTimes> eldest) {
+      return size() > MAX_PENDING_PUBLISH_TIMES;
+    }
+  };
+  private int size;
+  private long retainedBytes;
+  private boolean closed;
+
+  MappedFileEventStore(Path directory, String filePrefix, String topic,
+      Materializer<T> materializer) {
+    this(directory, filePrefix, topic, DEFAULT_SEGMENT_SIZE, materializer);
+  }
+
+  MappedFileEventStore(Path directory, String filePrefix, String topic, int segmentSize,
+      Materializer<T> materializer) {
+    this.directory = directory;
+    this.filePrefix = filePrefix;
+    this.topic = topic;
+    this.segmentSize = segmentSize;
+    this.materializer = materializer;
+  }
+
+  @Override
+  public void add(KafkaEventWrapper<T> event) {
+    if (closed) {
+      return;
+    }
+    var record = event.getConsumerRecord();
+    var key = bytes(record.key());
+    var value = bytes(record.value());
+    var headers = record.headers().toArray();
+
+    var length = Integer.BYTES + Long.BYTES * 5 + 1 + lengthOf(key) + lengthOf(value) + Integer.BYTES;
+    for (Header header : headers) {
+      length += lengthOf(bytes(header.key())) + lengthOf(header.value());
+    }
+
+    var segment = segmentWithCapacity(length + Integer.BYTES);
+    var buffer = segment.buffer;
+    var position = buffer.position();
+    buffer.putInt(record.partition());
+    buffer.putLong(record.offset());
+    buffer.putLong(record.timestamp());
+    buffer.put((byte) record.timestampType().id);
+    buffer.putLong(event.getReceivedAt());
+    var publishTimes = event.getPublishTimes();
+    if (publishTimes != null && publishTimes.isPublished()) {
+      buffer.putLong(publishTimes.getSentAt());
+      buffer.putLong(publishTimes.getAcknowledgedAt());
+    } else {
+      buffer.putLong(-1);
+      buffer.putLong(-1);
+      if (publishTimes != null) {
+        var eventPosition = size;
+        pendingPublishTimes.put(eventPosition, publishTimes);
+        publishTimes.whenPublished(() -> published(eventPosition, segment, position, publishTimes));
+      }
+    }
+    putBytes(buffer, key);
+    putBytes(buffer, value);
+    buffer.putInt(headers.length);
+    for (Header header : headers) {
+      putBytes(buffer, bytes(header.key()));
+      putBytes(buffer, header.value());
+    }
+    buffer.putInt(buffer.position(), SpillSegmentReader.END_MARKER);
+
+    if (size == index.length) {
+      index = Arrays.copyOf(index, size * 2);
+    }
+    index[size++] = ((long) (segments.size() - 1) << (Long.SIZE - SEGMENT_BITS)) | position;
+    retainedBytes += length;
+  }
+
+  @Override
+  public Iterator<KafkaEventWrapper<T>> iterator() {
+    var count = size;
+    return new Iterator<>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < count;
+      }
+
+      @Override
+      public KafkaEventWrapper<T> next() {
+        if (next >= count) {
+          throw new NoSuchElementException();
+        }
+        return materialize(next++);
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public long getEvictedCount() {
+    return 0;
+  }
+
+  /**
+   * @return bytes written to segment files
+   */
+  @Override
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  /**
+   * Indexes keep positions of events, which are equal to their ingestion sequences because store never evicts.
+   */
+  @Override
+  public LongFunction<KafkaEventWrapper<T>> positionLookup() {
+    return position -> position < size ? materialize((int) position) : null;
+  }
+
+  /**
+   * @return number of materialized events kept on-heap
+   */
+  int getMaterializedCount() {
+    return materialized.size();
+  }
+
+  /**
+   * @return number of events consumed before their acknowledgement, whose publish times are still kept on-heap
+   */
+  int getPendingPublishTimesCount() {
+    return pendingPublishTimes.size();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    pendingPublishTimes.clear();
+    materialized.clear();
+    for (Segment segment : segments) {
+      segment.buffer.force();
+      try {
+        segment.channel.truncate(segment.buffer.position() + Integer.BYTES);
+      } catch (IOException e) {
+        log.warn("Cannot truncate event segment file, it is left at its mapped size", e);
+      }
+      try {
+        segment.channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Called on producer callback thread, so it takes the same lock consumer guards store with.
+   */
+  private void published(int eventPosition, Segment segment, int position, PublishTimes publishTimes) {
+    synchronized (this) {
+      if (closed || pendingPublishTimes.remove(eventPosition) == null) {
+        return;
+      }
+      segment.buffer.putLong(position + PUBLISH_TIMES_POSITION, publishTimes.getSentAt());
+      segment.buffer.putLong(position + PUBLISH_TIMES_POSITION + Long.BYTES, publishTimes.getAcknowledgedAt());
+    }
+  }
+
+  private KafkaEventWrapper<T> materialize(int position) {
+    var event = materialized.get(position);
+    if (event == null) {
+      event = read(index[position], pendingPublishTimes.get(position));
+      materialized.put(position, event);
+    }
+    return event;
+  }
+
+  private KafkaEventWrapper<T> read(long entry, PublishTimes pendingTimes) {
+    var buffer = segments.get((int) (entry >>> (Long.SIZE - SEGMENT_BITS))).buffer.duplicate();
+    buffer.position((int) (entry & POSITION_MASK));
+    var spilled = SpillSegmentReader.readRecord(buffer, topic);
+    var publishTimes = spilled.getSentAt() >= 0
+        ? new PublishTimes(spilled.getSentAt(), spilled.getAcknowledgedAt())
+        : pendingTimes;
+    return materializer.materialize(spilled.getRecord(), spilled.getReceivedAt(), publishTimes);
+  }
+
+  private Segment segmentWithCapacity(int length) {
+    if (segments.isEmpty() || segments.get(segments.size() - 1).buffer.remaining() < length) {
+      var file = directory.resolve(String.format("%s-%05d.segment", filePrefix, segments.size()));
+      try {
+        Files.createDirectories(directory);
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        var capacity = Math.max(nextSegmentSize(), length);
+        segments.add(new Segment(channel, channel.map(MapMode.READ_WRITE, 0, capacity)));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot create event segment file " + file, e);
+      }
+    }
+    return segments.get(segments.size() - 1);
+  }
+
+  private int nextSegmentSize() {
+    if (segments.isEmpty()) {
+      return Math.min(INITIAL_SEGMENT_SIZE, segmentSize);
+    }
+    var lastSize = segments.get(segments.size() - 1).buffer.capacity();
+    return (int) Math.min((long) lastSize * 2, segmentSize);
+  }
+
+  private static int lengthOf(byte[] bytes) {
+    return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+  }
+
+  private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.putInt(-1);
+    } else {
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates event from record read from segment.
+   */
+  interface Materializer<T> {
+
+    KafkaEventWrapper<T> materialize(ConsumerRecord<String, String> record, long receivedAt,
+        PublishTimes publishTimes);
+  }
+
+  private static class Segment {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private Segment(FileChannel channel, MappedByteBuffer buffer) {
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+  }
+}
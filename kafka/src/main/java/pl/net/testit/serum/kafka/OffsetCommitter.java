@@ -0,0 +1,119 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies {@link CommitPolicy} in poll loop of single topic poller and counts issued commits. Must be called from the
+ * poll thread only, counters can be read from any thread.
+ */
+class OffsetCommitter {
+
+  private static final Logger log = LoggerFactory.getLogger(OffsetCommitter.class);
+
+  private final CommitPolicy policy;
+  private final LongAdder commitsIssued = new LongAdder();
+  private final LongAdder commitsFailed = new LongAdder();
+  private final LongAdder commitNanos = new LongAdder();
+  private final LatencyHistogram commitLatencies = new LatencyHistogram();
+  private boolean pendingOffsets;
+  private long lastCommitNanos = System.nanoTime();
+
+  OffsetCommitter(CommitPolicy policy) {
+    this.policy = policy;
+  }
+
+  void afterPoll(Consumer<?, ?> consumer, int polledRecords) {
+    afterPoll(consumer, polledRecords, isCommitDue(polledRecords));
+  }
+
+  /**
+   * Consumer position is committed, so records returned by poll should be processed before calling this method.
+   *
+   * @param consumer - kafka consumer of poller
+   * @param polledRecords - number of records returned by last poll
+   * @param commitDue - result of {@link #isCommitDue(int)} checked before records were processed
+   */
+  void afterPoll(Consumer<?, ?> consumer, int polledRecords, boolean commitDue) {
+    if (commitDue) {
+      if (policy.getMode() == CommitPolicy.Mode.SYNC) {
+        commitSync(consumer);
+      } else {
+        commitAsync(consumer);
+      }
+    } else if (policy.getMode() == CommitPolicy.Mode.NONE) {
+      pendingOffsets = false;
+    } else {
+      pendingOffsets |= polledRecords > 0;
+    }
+  }
+
+  /**
+   * @param polledRecords - number of records returned by last poll
+   * @return true if offsets should be committed after records of last poll are processed
+   */
+  boolean isCommitDue(int polledRecords) {
+    if (!pendingOffsets && polledRecords == 0) {
+      return false;
+    }
+    switch (policy.getMode()) {
+      case SYNC:
+        return true;
+      case ASYNC:
+        return System.nanoTime() - lastCommitNanos >= policy.getInterval().toNanos();
+      default:
+        return false;
+    }
+  }
+
+  void beforeClose(Consumer<?, ?> consumer) {
+    if (pendingOffsets && policy.getMode() != CommitPolicy.Mode.NONE) {
+      commitSync(consumer);
+    }
+  }
+
+  CommitStats getStats() {
+    return new CommitStats(commitsIssued.sum(), commitsFailed.sum(), Duration.ofNanos(commitNanos.sum()));
+  }
+
+  /**
+   * @return time poll thread was blocked by single commit
+   */
+  LatencyStats getCommitLatencies() {
+    return commitLatencies.getStats();
+  }
+
+  private void commitSync(Consumer<?, ?> consumer) {
+    var start = System.nanoTime();
+    try {
+      consumer.commitSync();
+    } catch (RuntimeException ex) {
+      commitsFailed.increment();
+      log.warn("Offset commit failed", ex);
+    } finally {
+      afterCommit(start);
+    }
+  }
+
+  private void commitAsync(Consumer<?, ?> consumer) {
+    var start = System.nanoTime();
+    consumer.commitAsync((offsets, ex) -> {
+      if (ex != null) {
+        commitsFailed.increment();
+        log.warn("Offset commit failed", ex);
+      }
+    });
+    afterCommit(start);
+  }
+
+  private void afterCommit(long start) {
+    lastCommitNanos = System.nanoTime();
+    commitNanos.add(lastCommitNanos - start);
+    commitLatencies.recordNanos(lastCommitNanos - start);
+    commitsIssued.increment();
+    pendingOffsets = false;
+  }
+}
@@ -0,0 +1,164 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands records polled by {@link TopicPoller} to worker tasks. All records of a partition go to the same worker through
+ * its bounded queue, so they are processed in partition order while different partitions are processed in parallel.
+ * Poll thread blocks when queue of a worker is full, until there is space, dispatcher is stopped or the worker dies.
+ * Workers should run on executor of their own, as each of them occupies one thread until dispatcher is stopped.
+ */
+class PartitionDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(PartitionDispatcher.class);
+  private static final long QUEUE_POLL_TIMEOUT_MS = 100;
+
+  private final String topic;
+  private final Consumer<PolledRecord> handler;
+  private final List<BlockingQueue<PolledRecord>> queues = new ArrayList<>();
+  private final List<Future<?>> workers = new ArrayList<>();
+  private final Set<Thread> workerThreads = ConcurrentHashMap.newKeySet();
+  private final AtomicLong pending = new AtomicLong();
+  private final Object idleLock = new Object();
+  private volatile boolean running = true;
+
+  PartitionDispatcher(ExecutorService executorService, String topic, int workerCount, int queueCapacity,
+      Consumer<PolledRecord> handler) {
+    this.topic = topic;
+    this.handler = handler;
+    for (int i = 0; i < workerCount; i++) {
+      var queue = new ArrayBlockingQueue<PolledRecord>(queueCapacity);
+      queues.add(queue);
+      workers.add(executorService.submit(() -> work(queue)));
+    }
+  }
+
+  /**
+   * @param record - record to process, blocks until there is space in queue of its partition worker
+   * @return false if dispatcher was stopped before record was queued
+   * @throws InterruptedException if interrupted while waiting for space in queue
+   * @throws KafkaClientException if worker of record partition is not running
+   */
+  boolean dispatch(PolledRecord record) throws InterruptedException {
+    var worker = record.getRawRecord().partition() % queues.size();
+    var queue = queues.get(worker);
+    pending.incrementAndGet();
+    while (!queue.offer(record, QUEUE_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+      if (!running || workers.get(worker).isDone()) {
+        processed();
+        if (!running) {
+          return false;
+        }
+        throw new KafkaClientException("Worker of topic " + topic + " is not running");
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Block until all dispatched records are processed, or all workers finished after dispatcher was stopped.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   * @throws KafkaClientException if a worker died with records left to process
+   */
+  void awaitIdle() throws InterruptedException {
+    synchronized (idleLock) {
+      while (pending.get() > 0) {
+        if (running && workers.stream().anyMatch(Future::isDone)) {
+          throw new KafkaClientException("Worker of topic " + topic + " stopped with records left to process");
+        }
+        if (!running && workers.stream().allMatch(Future::isDone)) {
+          // stopped workers drained their queues, records left were queued after that
+          return;
+        }
+        idleLock.wait(QUEUE_POLL_TIMEOUT_MS);
+      }
+    }
+  }
+
+  /**
+   * Process remaining records and stop workers. Records queued after dispatcher was stopped are dropped.
+   *
+   * @throws InterruptedException if interrupted while waiting for workers
+   */
+  void close() throws InterruptedException {
+    if (running) {
+      awaitIdle();
+    }
+    stop();
+    for (Future<?> worker : workers) {
+      try {
+        worker.get();
+      } catch (ExecutionException | CancellationException e) {
+        log.warn("Worker of topic {} did not stop cleanly", topic, e);
+      }
+    }
+    var dropped = queues.stream().mapToInt(BlockingQueue::size).sum();
+    if (dropped > 0) {
+      log.warn("Dropped {} records of topic {} queued after workers stopped", dropped, topic);
+    }
+  }
+
+  /**
+   * Stop workers without waiting for them, records already queued are still processed.
+   */
+  void stop() {
+    running = false;
+  }
+
+  /**
+   * @return true if called by worker of this dispatcher
+   */
+  boolean isWorkerThread() {
+    return workerThreads.contains(Thread.currentThread());
+  }
+
+  private void work(BlockingQueue<PolledRecord> queue) {
+    workerThreads.add(Thread.currentThread());
+    try {
+      while (running || !queue.isEmpty()) {
+        var record = queue.poll(QUEUE_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (record != null) {
+          process(record);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      workerThreads.remove(Thread.currentThread());
+    }
+  }
+
+  private void process(PolledRecord record) {
+    try {
+      handler.accept(record);
+    } catch (RuntimeException ex) {
+      log.error("Processing record from topic {} partition {} offset {} failed", topic,
+          record.getRawRecord().partition(), record.getRawRecord().offset(), ex);
+    } finally {
+      processed();
+    }
+  }
+
+  private void processed() {
+    if (pending.decrementAndGet() == 0) {
+      synchronized (idleLock) {
+        idleLock.notifyAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+/**
+ * Records of single partition of {@link InMemoryKafkaTransport} topic. Offset of record is its index in log.
+ */
+class PartitionLog {
+
+  private final String topic;
+  private final int partition;
+  private final List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+
+  PartitionLog(String topic, int partition) {
+    this.topic = topic;
+    this.partition = partition;
+  }
+
+  synchronized ConsumerRecord<String, byte[]> append(ProducerRecord<String, byte[]> producerRecord, long timestamp) {
+    var key = producerRecord.key();
+    var value = producerRecord.value();
+    var record = new ConsumerRecord<>(topic, partition, records.size(), timestamp, TimestampType.CREATE_TIME,
+        key == null ? -1 : key.getBytes(StandardCharsets.UTF_8).length, value == null ? -1 : value.length, key, value,
+        new RecordHeaders(producerRecord.headers().toArray()), Optional.empty());
+    records.add(record);
+    return record;
+  }
+
+  /**
+   * @param offset - offset of first record
+   * @param maxRecords - maximal number of records
+   * @return records starting at offset
+   */
+  synchronized List<ConsumerRecord<String, byte[]>> read(long offset, int maxRecords) {
+    if (offset >= records.size()) {
+      return List.of();
+    }
+    var end = (int) Math.min(records.size(), offset + maxRecords);
+    return new ArrayList<>(records.subList((int) offset, end));
+  }
+
+  /**
+   * @param timestamp - searched timestamp
+   * @return first record with timestamp at or after given one, null if there is none
+   */
+  synchronized OffsetAndTimestamp offsetForTime(long timestamp) {
+    for (ConsumerRecord<String, byte[]> record : records) {
+      if (record.timestamp() >= timestamp) {
+        return new OffsetAndTimestamp(record.offset(), record.timestamp());
+      }
+    }
+    return null;
+  }
+
+  synchronized long endOffset() {
+    return records.size();
+  }
+}
@@ -0,0 +1,58 @@
+package pl.net.testit.serum.kafka;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import pl.net.testit.serum.kafka.PublishedRecords.PublishTimes;
+
+/**
+ * Record polled once by {@link TopicPoller} and dispatched to every consumer subscribed to its topic. Value is kept as
+ * raw bytes so consumers can pre-filter it, it is decoded to String only once and only if some consumer accepts it.
+ */
+class PolledRecord {
+
+  private final ConsumerRecord<String, byte[]> rawRecord;
+  private final long receivedAt;
+  private final PublishTimes publishTimes;
+  private ConsumerRecord<String, String> decodedRecord;
+
+  PolledRecord(ConsumerRecord<String, byte[]> rawRecord, long receivedAt, PublishTimes publishTimes) {
+    this.rawRecord = rawRecord;
+    this.receivedAt = receivedAt;
+    this.publishTimes = publishTimes;
+  }
+
+  ConsumerRecord<String, byte[]> getRawRecord() {
+    return rawRecord;
+  }
+
+  long getReceivedAt() {
+    return receivedAt;
+  }
+
+  /**
+   * @return send and acknowledgement times if record was published by the same client, null otherwise
+   */
+  PublishTimes getPublishTimes() {
+    return publishTimes;
+  }
+
+  byte[] getValue() {
+    return rawRecord.value();
+  }
+
+  /**
+   * Decode record value to String. Records are dispatched by single thread, so decoded record is memoized without
+   * synchronization.
+   *
+   * @return record with UTF-8 decoded value
+   */
+  ConsumerRecord<String, String> getConsumerRecord() {
+    if (decodedRecord == null) {
+      var value = rawRecord.value() == null ? null : new String(rawRecord.value(), StandardCharsets.UTF_8);
+      decodedRecord = new ConsumerRecord<>(rawRecord.topic(), rawRecord.partition(), rawRecord.offset(),
+          rawRecord.timestamp(), rawRecord.timestampType(), rawRecord.serializedKeySize(),
+          rawRecord.serializedValueSize(), rawRecord.key(), value, rawRecord.headers(), rawRecord.leaderEpoch());
+    }
+    return decodedRecord;
+  }
+}
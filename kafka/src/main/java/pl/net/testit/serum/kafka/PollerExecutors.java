@@ -0,0 +1,67 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors running poll loops of {@link TopicPoller}, one long-running task per subscribed topic, and its partition
+ * workers.
+ */
+final class PollerExecutors {
+
+  private static final Logger log = LoggerFactory.getLogger(PollerExecutors.class);
+  private static final AtomicInteger clientCounter = new AtomicInteger();
+
+  private PollerExecutors() {
+  }
+
+  /**
+   * @return cached pool of daemon platform threads named after client instance
+   */
+  static ExecutorService platformThreads() {
+    var prefix = "serum-kafka-" + clientCounter.incrementAndGet() + "-poller-";
+    var threadCounter = new AtomicInteger();
+    return Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, prefix + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * @param topic - topic processed by workers
+   * @param workers - number of partition workers
+   * @return fixed pool of daemon platform threads running partition workers of topic poller
+   */
+  static ExecutorService workerThreads(String topic, int workers) {
+    var prefix = "serum-kafka-" + topic + "-worker-";
+    var threadCounter = new AtomicInteger();
+    return Executors.newFixedThreadPool(workers, r -> {
+      Thread thread = new Thread(r, prefix + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * Virtual threads are looked up reflectively so module still runs on Java 11. When runtime does not support them
+   * platform threads are used.
+   *
+   * @return executor starting virtual thread per task
+   */
+  static ExecutorService virtualThreads() {
+    try {
+      var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.warn("Virtual threads are not available on Java {}, using platform threads",
+          System.getProperty("java.version"));
+      return platformThreads();
+    }
+  }
+}
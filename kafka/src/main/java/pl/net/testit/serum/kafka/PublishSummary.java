@@ -0,0 +1,69 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+
+/**
+ * Result of {@link SerumKafkaClient#publishAll} - number of sent events, throughput and acknowledgement latency.
+ */
+public class PublishSummary {
+
+  private final long sent;
+  private final long failed;
+  private final Duration elapsed;
+  private final LatencyHistogram ackLatencies;
+  private final LatencyStats ackLatency;
+
+  PublishSummary(long sent, long failed, Duration elapsed, LatencyHistogram ackLatencies) {
+    this.sent = sent;
+    this.failed = failed;
+    this.elapsed = elapsed;
+    this.ackLatencies = ackLatencies;
+    this.ackLatency = ackLatencies.getStats();
+  }
+
+  public long getSent() {
+    return sent;
+  }
+
+  public long getAcknowledged() {
+    return sent - failed;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * @return acknowledged events per second
+   */
+  public double getThroughput() {
+    var seconds = elapsed.toNanos() / 1e9;
+    return seconds == 0 ? 0 : getAcknowledged() / seconds;
+  }
+
+  /**
+   * @return time between send and broker acknowledgement of acknowledged events
+   */
+  public LatencyStats getAckLatency() {
+    return ackLatency;
+  }
+
+  /**
+   * @param percentile - percentile from range 0-100
+   * @return time between send and broker acknowledgement of given percentile of acknowledged events, with relative
+   *     error below 3.2%
+   */
+  public Duration getAckLatency(double percentile) {
+    return ackLatencies.getPercentile(percentile);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("sent: %d, acknowledged: %d, failed: %d, elapsed: %d ms, throughput: %.1f events/s, "
+        + "ack latency: [%s]", sent, getAcknowledged(), failed, elapsed.toMillis(), getThroughput(), ackLatency);
+  }
+}
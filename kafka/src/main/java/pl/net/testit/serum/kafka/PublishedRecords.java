@@ -0,0 +1,195 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Send and acknowledgement times of last events published by {@link SerumKafkaClient}, looked up by topic pollers to
+ * measure latency of events published and consumed by the same client. Only topics polled by the client are tracked.
+ *
+ * <p>Offset of record is known only when producer callback runs, and consumer can poll the record before that. Lookup
+ * of such record returns empty {@link PublishTimes}, which are filled in when acknowledgement of the same offset
+ * arrives.
+ */
+class PublishedRecords {
+
+  private static final int MAX_TRACKED_RECORDS_PER_PARTITION = 100_000;
+
+  private final Map<String, TopicRecords> topics = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking records published to topic, called when topic is subscribed.
+   *
+   * @param topic - polled topic
+   * @return records of topic
+   */
+  TopicRecords track(String topic) {
+    return topics.computeIfAbsent(topic, name -> new TopicRecords());
+  }
+
+  /**
+   * @param topic - topic of published record
+   * @return records of topic, null if topic is not polled by the client
+   */
+  TopicRecords get(String topic) {
+    return topics.get(topic);
+  }
+
+  static class TopicRecords {
+
+    private final AtomicInteger pendingSends = new AtomicInteger();
+    private final Map<Integer, PartitionRecords> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Called before record is sent.
+     */
+    void sending() {
+      pendingSends.incrementAndGet();
+    }
+
+    void acknowledged(int partition, long offset, long sentAt, long acknowledgedAt) {
+      var awaiting = partitions.computeIfAbsent(partition, p -> new PartitionRecords())
+          .acknowledged(offset, sentAt, acknowledgedAt);
+      pendingSends.decrementAndGet();
+      if (awaiting != null) {
+        awaiting.publish(sentAt, acknowledgedAt);
+      }
+    }
+
+    void failed() {
+      pendingSends.decrementAndGet();
+    }
+
+    /**
+     * Called by poll thread for every polled record.
+     *
+     * @param partition - partition of polled record
+     * @param offset - offset of polled record
+     * @return publish times, empty times filled in on acknowledgement if any send to topic is not yet acknowledged, or
+     *     null if record was not published by this client
+     */
+    PublishTimes get(int partition, long offset) {
+      var records = partitions.get(partition);
+      if (records == null) {
+        if (pendingSends.get() == 0) {
+          return null;
+        }
+        records = partitions.computeIfAbsent(partition, p -> new PartitionRecords());
+      }
+      return records.get(offset, pendingSends);
+    }
+  }
+
+  /**
+   * Times of acknowledged records not yet polled and empty times of polled records not yet acknowledged. Both are
+   * removed once matched and bounded, so records of other producers polled while sends are pending are dropped
+   * eventually.
+   */
+  private static class PartitionRecords {
+
+    private final Map<Long, PublishTimes> acknowledged = boundedMap();
+    private final Map<Long, PublishTimes> awaiting = boundedMap();
+
+    /**
+     * @return empty times of record polled before acknowledgement, to be filled in by caller
+     */
+    synchronized PublishTimes acknowledged(long offset, long sentAt, long acknowledgedAt) {
+      var times = awaiting.remove(offset);
+      if (times == null) {
+        acknowledged.put(offset, new PublishTimes(sentAt, acknowledgedAt));
+      }
+      return times;
+    }
+
+    /**
+     * Pending sends are read under partition lock, so acknowledgement either precedes lookup or finds awaiting times.
+     */
+    synchronized PublishTimes get(long offset, AtomicInteger pendingSends) {
+      var times = acknowledged.remove(offset);
+      if (times == null && pendingSends.get() > 0) {
+        times = new PublishTimes();
+        awaiting.put(offset, times);
+      }
+      return times;
+    }
+
+    private static Map<Long, PublishTimes> boundedMap() {
+      return new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PublishTimes> eldest) {
+          return size() > MAX_TRACKED_RECORDS_PER_PARTITION;
+        }
+      };
+    }
+  }
+
+  /**
+   * Send and acknowledgement time of record, empty until acknowledgement of record polled before producer callback
+   * ran. Times of record which was not published by this client stay empty.
+   */
+  static class PublishTimes {
+
+    private long sentAt;
+    private long acknowledgedAt;
+    private boolean published;
+    private List<Runnable> publishListeners;
+
+    PublishTimes() {
+    }
+
+    PublishTimes(long sentAt, long acknowledgedAt) {
+      this.sentAt = sentAt;
+      this.acknowledgedAt = acknowledgedAt;
+      this.published = true;
+    }
+
+    synchronized boolean isPublished() {
+      return published;
+    }
+
+    synchronized long getSentAt() {
+      return sentAt;
+    }
+
+    synchronized long getAcknowledgedAt() {
+      return acknowledgedAt;
+    }
+
+    /**
+     * Run action when times are filled in, right away if they already are. Action runs on producer callback thread
+     * otherwise, and never if record was not published by this client.
+     *
+     * @param action - action reading times
+     */
+    void whenPublished(Runnable action) {
+      synchronized (this) {
+        if (!published) {
+          if (publishListeners == null) {
+            publishListeners = new ArrayList<>(1);
+          }
+          publishListeners.add(action);
+          return;
+        }
+      }
+      action.run();
+    }
+
+    private void publish(long sentAt, long acknowledgedAt) {
+      List<Runnable> listeners;
+      synchronized (this) {
+        this.sentAt = sentAt;
+        this.acknowledgedAt = acknowledgedAt;
+        this.published = true;
+        listeners = publishListeners;
+        publishListeners = null;
+      }
+      if (listeners != null) {
+        listeners.forEach(Runnable::run);
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+
+/**
+ * Limits events kept by {@link SerumKafkaConsumer}. Limits can be combined, oldest events are evicted first when any of
+ * them is exceeded. Evicted events are no longer visible to waits.
+ */
+public final class RetentionPolicy {
+
+  private static final RetentionPolicy UNBOUNDED = new RetentionPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, null);
+
+  private final int maxCount;
+  private final long maxBytes;
+  private final Duration timeToLive;
+
+  private RetentionPolicy(int maxCount, long maxBytes, Duration timeToLive) {
+    this.maxCount = maxCount;
+    this.maxBytes = maxBytes;
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * @return policy keeping all events for the whole subscription lifetime
+   */
+  public static RetentionPolicy unbounded() {
+    return UNBOUNDED;
+  }
+
+  /**
+   * @param maxCount - maximal number of kept events
+   * @return policy keeping last maxCount events
+   */
+  public static RetentionPolicy maxCount(int maxCount) {
+    return UNBOUNDED.withMaxCount(maxCount);
+  }
+
+  /**
+   * @param maxBytes - maximal serialized size (key, value and headers) of kept events
+   * @return policy keeping last events which serialized size does not exceed maxBytes
+   */
+  public static RetentionPolicy maxBytes(long maxBytes) {
+    return UNBOUNDED.withMaxBytes(maxBytes);
+  }
+
+  /**
+   * @param timeToLive - time for which event is kept after being consumed
+   * @return policy keeping events consumed within timeToLive
+   */
+  public static RetentionPolicy timeToLive(Duration timeToLive) {
+    return UNBOUNDED.withTimeToLive(timeToLive);
+  }
+
+  public RetentionPolicy withMaxCount(int maxCount) {
+    if (maxCount < 1) {
+      throw new IllegalArgumentException("maxCount should be greater than 0");
+    }
+    return new RetentionPolicy(maxCount, maxBytes, timeToLive);
+  }
+
+  public RetentionPolicy withMaxBytes(long maxBytes) {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes should be greater than 0");
+    }
+    return new RetentionPolicy(maxCount, maxBytes, timeToLive);
+  }
+
+  public RetentionPolicy withTimeToLive(Duration timeToLive) {
+    if (timeToLive.isNegative() || timeToLive.isZero()) {
+      throw new IllegalArgumentException("timeToLive should be positive");
+    }
+    return new RetentionPolicy(maxCount, maxBytes, timeToLive);
+  }
+
+  int getMaxCount() {
+    return maxCount;
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  boolean hasTimeToLive() {
+    return timeToLive != null;
+  }
+
+  long getTimeToLiveMillis() {
+    return timeToLive == null ? Long.MAX_VALUE : timeToLive.toMillis();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RetentionPolicy{maxCount=%s, maxBytes=%s, timeToLive=%s}",
+        maxCount == Integer.MAX_VALUE ? "unbounded" : maxCount,
+        maxBytes == Long.MAX_VALUE ? "unbounded" : maxBytes,
+        timeToLive == null ? "unbounded" : timeToLive);
+  }
+}
@@ -1,62 +1,137 @@
 package pl.net.testit.serum.kafka;
 
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import org.apache.kafka.clients.admin.AdminClient;
-import org.apache.kafka.clients.admin.ConsumerGroupListing;
-import org.apache.kafka.clients.producer.KafkaProducer;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
-import org.apache.kafka.common.ConsumerGroupState;
+import org.apache.kafka.common.errors.GroupIdNotFoundException;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.awaitility.core.ConditionTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class SerumKafkaClient {
+public final class SerumKafkaClient implements AutoCloseable {
 
   private static final Logger log = LoggerFactory.getLogger(SerumKafkaClient.class);
-  private static final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
-        Thread thread = new Thread(r);
-        thread.setDaemon(true);
-        thread.setPriority(Thread.NORM_PRIORITY);
-        return thread;
-      }
-  );
+  private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+  private static final int MAX_REPORTED_FAILURES = 10;
+  private static final long EXECUTOR_TERMINATION_TIMEOUT_MS = 30000;
+  private static final Duration TOPIC_DELETION_TIMEOUT = Duration.ofSeconds(60);
+  private static final long MIN_METADATA_BACKOFF_MS = 10;
+  private static final long MAX_METADATA_BACKOFF_MS = 500;
 
   private final String consumerGroupPrefix = "test-";
   private final Properties consumerProperties;
-  private final Properties adminProperties;
   private final Properties producerProperties;
-  private final Map<String, SerumKafkaConsumer<?>> consumers = new HashMap<>();
-  private KafkaProducer<String, String> producer;
+  private final ConsumerOptions consumerOptions;
+  private final Map<String, TopicPoller> pollers = new ConcurrentHashMap<>();
+  private final List<SerumKafkaConsumer<?>> consumers = new CopyOnWriteArrayList<>();
+  private final PublishedRecords publishedRecords = new PublishedRecords();
+  private final Set<String> createdTopics = ConcurrentHashMap.newKeySet();
+  private final ExecutorService executorService;
+  private final boolean ownsExecutor;
+  private final KafkaTransport transport;
+  private final boolean ownsTransport;
+  private Producer<String, byte[]> producer;
+  private GroupCleanupStats groupCleanupStats = new GroupCleanupStats(0, 0, Duration.ZERO);
+  private volatile boolean closed;
 
-  SerumKafkaClient(Properties consumerProperties, Properties adminProperties, Properties producerProperties) {
+  SerumKafkaClient(Properties consumerProperties, Properties producerProperties, ConsumerOptions consumerOptions,
+      ExecutorService executorService, boolean ownsExecutor, KafkaTransport transport, boolean ownsTransport) {
     this.consumerProperties = consumerProperties;
-    this.adminProperties = adminProperties;
     this.producerProperties = producerProperties;
+    this.consumerOptions = consumerOptions;
+    this.executorService = executorService;
+    this.ownsExecutor = ownsExecutor;
+    this.transport = transport;
+    this.ownsTransport = ownsTransport;
   }
 
   public static SerumKafkaClientBuilder builder(String bootstrapServers) {
     return new SerumKafkaClientBuilder(bootstrapServers);
   }
 
+  /**
+   * @param transport - transport creating kafka clients, e.g. {@link InMemoryKafkaTransport}
+   * @return builder of client using given transport instead of connecting to broker
+   */
+  public static SerumKafkaClientBuilder builder(KafkaTransport transport) {
+    return new SerumKafkaClientBuilder(transport);
+  }
+
   public <T> SerumKafkaConsumer<T> subscribe(Class<T> eventClass) {
+    return subscribe(eventClass, consumerOptions.getRetentionPolicy());
+  }
+
+  /**
+   * Subscribe topic defined by {@link KafkaEvent} annotation of event class.
+   *
+   * @param eventClass - class annotated with {@link KafkaEvent}, consumed events are deserialized to it
+   * @param retentionPolicy - limits events kept by returned consumer
+   * @param <T> - event type
+   * @return consumer of events
+   */
+  public <T> SerumKafkaConsumer<T> subscribe(Class<T> eventClass, RetentionPolicy retentionPolicy) {
+    return subscribe(eventClass, poller -> new SerumKafkaConsumer<>(poller, eventClass, retentionPolicy,
+        consumerOptions.getSpillDirectory()));
+  }
+
+  /**
+   * Subscribe topic of event class ignoring its filter and where conditions, so every record of the topic is consumed.
+   */
+  <T> SerumKafkaConsumer<T> subscribeUnfiltered(Class<T> eventClass, RetentionPolicy retentionPolicy) {
+    return subscribe(eventClass, poller -> SerumKafkaConsumer.unfiltered(poller, eventClass, retentionPolicy,
+        consumerOptions.getSpillDirectory()));
+  }
+
+  private <T> SerumKafkaConsumer<T> subscribe(Class<T> eventClass,
+      Function<TopicPoller, SerumKafkaConsumer<T>> consumerFactory) {
+    ensureOpen();
     var config = Optional.ofNullable(eventClass.getAnnotation(KafkaEvent.class)).orElseThrow(
         () -> new RuntimeException("eventClass should be annotated by KafkaEvent")
     );
-    var consumer = new SerumKafkaConsumer<T>(
-        executorService,
-        consumerGroupPrefix,
-        config.topic(),
-        config.filter(),
-        consumerProperties, eventClass);
-    consumers.put(consumer.getConsumerGroupId(), consumer);
+    SerumKafkaConsumer<T> consumer;
+    // poller is registered under the same lock its consumer group is marked for deletion with
+    synchronized (pollers) {
+      var poller = pollers.compute(config.topic(), (topic, existing) ->
+          existing != null && !existing.isDeleting() ? existing : new TopicPoller(
+              executorService,
+              transport,
+              consumerOptions.isManualAssignment() ? null : consumerGroupPrefix + UUID.randomUUID(),
+              topic,
+              consumerProperties,
+              consumerOptions,
+              publishedRecords));
+      consumer = consumerFactory.apply(poller);
+    }
+    consumers.add(consumer);
+    consumer.onUnsubscribe(() -> consumers.remove(consumer));
     return consumer;
   }
 
@@ -68,18 +143,170 @@ public final class SerumKafkaClient {
   public RecordMetadata publishEvent(ProducerRecord<String, String> producerRecord) {
     log.info("Published event on topic {}. Event: {}", producerRecord.topic(), producerRecord.value());
     try {
-      return getProducer().send(producerRecord).get();
+      return send(encode(producerRecord)).get();
     } catch (InterruptedException | ExecutionException e) {
       throw new KafkaClientException("Error when publishing event to topic " + producerRecord.topic(), e);
     }
   }
 
+  /**
+   * Serialize event to json and publish it on topic defined by {@link KafkaEvent} annotation of event class.
+   *
+   * @param event - event of class annotated with {@link KafkaEvent}
+   * @return metadata of acknowledged record
+   */
+  public RecordMetadata publish(Object event) {
+    return publish(KafkaEventRecord.of(event));
+  }
+
+  public RecordMetadata publish(Object event, String key) {
+    return publish(KafkaEventRecord.of(event).withKey(key));
+  }
+
+  public RecordMetadata publish(KafkaEventRecord<?> eventRecord) {
+    var topic = EventSerializer.topicOf(eventRecord.getEvent().getClass());
+    try {
+      return publishAsync(eventRecord).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new KafkaClientException("Error when publishing event to topic " + topic, e);
+    }
+  }
+
+  /**
+   * Serialize event directly to json bytes and send it with key, headers and partition of given record without waiting
+   * for broker acknowledgement. Topic is defined by {@link KafkaEvent} annotation of event class.
+   *
+   * @param eventRecord - event with record key, headers and partition
+   * @return future completed with record metadata when event is acknowledged or exceptionally when sending fails
+   */
+  public CompletableFuture<RecordMetadata> publishAsync(KafkaEventRecord<?> eventRecord) {
+    var event = eventRecord.getEvent();
+    var topic = EventSerializer.topicOf(event.getClass());
+    var value = EventSerializer.serialize(event);
+    log.info("Publishing {} on topic {} with key {}", event.getClass().getSimpleName(), topic, eventRecord.getKey());
+    if (log.isDebugEnabled()) {
+      log.debug("Event: {}", new String(value, StandardCharsets.UTF_8));
+    }
+    return send(new ProducerRecord<>(topic, eventRecord.getPartition(), eventRecord.getTimestamp(),
+        eventRecord.getKey(), value, eventRecord.getHeaders()));
+  }
+
+  CompletableFuture<RecordMetadata> sendQuietly(KafkaEventRecord<?> eventRecord) {
+    var event = eventRecord.getEvent();
+    return send(new ProducerRecord<>(EventSerializer.topicOf(event.getClass()), eventRecord.getPartition(),
+        eventRecord.getTimestamp(), eventRecord.getKey(), EventSerializer.serialize(event), eventRecord.getHeaders()));
+  }
+
+  public CompletableFuture<RecordMetadata> publishEventAsync(String topic, String value) {
+    return publishEventAsync(new ProducerRecord<>(topic, value));
+  }
+
+  /**
+   * Send event without waiting for broker acknowledgement.
+   *
+   * @param producerRecord - record to send
+   * @return future completed with record metadata when event is acknowledged or exceptionally when sending fails
+   */
+  public CompletableFuture<RecordMetadata> publishEventAsync(ProducerRecord<String, String> producerRecord) {
+    log.info("Publishing event on topic {} with key {}", producerRecord.topic(), producerRecord.key());
+    log.debug("Event: {}", producerRecord.value());
+    return send(encode(producerRecord));
+  }
+
+  public PublishSummary publishAll(Collection<ProducerRecord<String, String>> producerRecords) {
+    return publishAll(producerRecords.stream(), DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  public PublishSummary publishAll(Stream<ProducerRecord<String, String>> producerRecords) {
+    return publishAll(producerRecords, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Send events pipelining them with at most maxInFlight events waiting for acknowledgement at once, so producer can
+   * batch them. Events are not logged one by one, summary is logged when all events are acknowledged.
+   *
+   * @param producerRecords - records to send
+   * @param maxInFlight - maximal number of sent and not yet acknowledged events
+   * @return summary of publishing
+   * @throws IllegalArgumentException if maxInFlight is less than 1
+   * @throws KafkaClientException if any event was not acknowledged, first failures are added as suppressed
+   */
+  public PublishSummary publishAll(Stream<ProducerRecord<String, String>> producerRecords, int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("At least one event should be allowed in flight");
+    }
+    var inFlight = new Semaphore(maxInFlight);
+    var failures = new ConcurrentLinkedQueue<Throwable>();
+    var failed = new LongAdder();
+    var ackLatencies = new LatencyHistogram();
+    var sent = 0L;
+    var start = System.nanoTime();
+
+    try {
+      for (var iterator = producerRecords.iterator(); iterator.hasNext(); ) {
+        var producerRecord = iterator.next();
+        inFlight.acquire();
+        var sentAt = System.nanoTime();
+        send(encode(producerRecord)).whenComplete((metadata, ex) -> {
+          if (ex == null) {
+            ackLatencies.recordNanos(System.nanoTime() - sentAt);
+          } else {
+            failed.increment();
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+              failures.add(ex);
+            }
+          }
+          inFlight.release();
+        });
+        sent++;
+      }
+      inFlight.acquire(maxInFlight);
+      inFlight.release(maxInFlight);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while publishing events", e);
+    }
+
+    var summary = new PublishSummary(sent, failed.sum(), Duration.ofNanos(System.nanoTime() - start), ackLatencies);
+    log.info("Published events. {}", summary);
+    if (summary.getFailed() > 0) {
+      var exception = new KafkaClientException("Failed to publish " + summary.getFailed() + " events. " + summary);
+      failures.forEach(exception::addSuppressed);
+      throw exception;
+    }
+    return summary;
+  }
+
+  /**
+   * @return latency percentiles of subscribed consumers created by this client, grouped by consumer
+   */
+  public String getLatencyReport() {
+    var report = new StringBuilder("Kafka latency report:");
+    for (SerumKafkaConsumer<?> consumer : consumers) {
+      report.append(String.format("%n  topic %s, event %s:", consumer.getTopic(),
+          consumer.getEventClass().getSimpleName()));
+      for (LatencyType latencyType : LatencyType.values()) {
+        var stats = consumer.getLatencyStats(latencyType);
+        if (stats.getCount() > 0) {
+          report.append(String.format("%n    %s: %s", latencyType, stats));
+        }
+      }
+    }
+    return report.toString();
+  }
+
   public void unsubscribeAllTopics() {
-    consumers.values().stream()
+    if (!consumers.isEmpty()) {
+      log.info(getLatencyReport());
+    }
+    consumers.stream()
         .filter(SerumKafkaConsumer::isSubscribed)
         .forEach(SerumKafkaConsumer::unsubscribe);
+    consumers.clear();
 
-    deleteEmptyConsumerGroups();
+    if (!closed) {
+      deleteEmptyConsumerGroups();
+    }
   }
 
   public void closeProducer() {
@@ -89,26 +316,355 @@ public final class SerumKafkaClient {
     }
   }
 
+  /**
+   * Unsubscribe all consumers and delete consumer groups created by client, stop all topic pollers waiting until their
+   * kafka consumers are closed, close producer and shut down executor and transport created by client. Executor and
+   * transport provided to {@link SerumKafkaClientBuilder} are left running.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    unsubscribeAllTopics();
+    closed = true;
+    pollers.values().forEach(TopicPoller::close);
+    pollers.clear();
+    closeProducer();
+    if (ownsTransport) {
+      transport.close();
+    }
+    if (ownsExecutor) {
+      shutdownExecutor();
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  KafkaTransport getTransport() {
+    return transport;
+  }
+
+  public CommitStats getCommitStats() {
+    return pollers.values().stream()
+        .map(TopicPoller::getCommitStats)
+        .reduce(new CommitStats(0, 0, Duration.ZERO), CommitStats::add);
+  }
+
+  /**
+   * Start definition of wait for events of several consumers correlated by join key.
+   *
+   * @return empty correlation, consumers are added with {@link EventCorrelation#on}
+   */
+  public EventCorrelation correlate() {
+    return new EventCorrelation();
+  }
+
+  /**
+   * @return metrics of every subscribed consumer created by this client, offset commits and consumer group cleanups
+   */
+  public ClientMetrics getMetrics() {
+    var consumerMetrics = consumers.stream()
+        .map(SerumKafkaConsumer::getMetrics)
+        .collect(Collectors.toList());
+    return new ClientMetrics(consumerMetrics, getCommitStats(), getGroupCleanupStats());
+  }
+
+  /**
+   * Delete consumer groups created by this client for topics which are no longer polled, blocking until done. Groups
+   * created by other clients, including ones running in parallel on the same cluster, are not touched. Stats of the
+   * cleanup are returned by {@link #deleteEmptyConsumerGroupsAsync()} and accumulated in
+   * {@link #getGroupCleanupStats()}.
+   */
   public void deleteEmptyConsumerGroups() {
-    try (AdminClient adminClient = AdminClient.create(adminProperties)) {
-      var emptyConsumerGroupsIds = adminClient.listConsumerGroups().all().get().stream()
-          .filter(consumerGroup -> consumerGroup.groupId().startsWith(consumerGroupPrefix))
-          .filter(consumerGroup -> consumerGroup.state().isPresent())
-          .filter(consumerGroup -> consumerGroup.state().orElseThrow().equals(ConsumerGroupState.EMPTY))
-          .map(ConsumerGroupListing::groupId)
-          .peek(groupId -> log.info("Deleting empty consumer group: {}", groupId))
+    deleteEmptyConsumerGroupsAsync().join();
+  }
+
+  /**
+   * Delete consumer groups created by this client for topics which are no longer polled with single batched admin
+   * request. Groups already removed by broker are counted as deleted, failures are logged.
+   *
+   * @return future completed with stats of this cleanup, it is never completed exceptionally
+   */
+  public CompletableFuture<GroupCleanupStats> deleteEmptyConsumerGroupsAsync() {
+    ensureOpen();
+    var start = System.nanoTime();
+    List<TopicPoller> idlePollers;
+    synchronized (pollers) {
+      idlePollers = pollers.values().stream()
+          .filter(poller -> poller.getConsumerGroupId() != null && poller.markDeleting())
           .collect(Collectors.toList());
+    }
+    if (idlePollers.isEmpty()) {
+      return CompletableFuture.completedFuture(new GroupCleanupStats(0, 0, Duration.ZERO));
+    }
 
-      adminClient.deleteConsumerGroups(emptyConsumerGroupsIds).all().get();
-    } catch (InterruptedException | ExecutionException e) {
-      e.printStackTrace();
+    var groupIds = idlePollers.stream().map(TopicPoller::getConsumerGroupId).collect(Collectors.toList());
+    log.info("Deleting consumer groups: {}", groupIds);
+    Map<String, CompletableFuture<Void>> deletions;
+    try {
+      deletions = transport.deleteConsumerGroups(groupIds);
+    } catch (RuntimeException e) {
+      log.warn("Could not delete consumer groups {}", groupIds, e);
+      idlePollers.forEach(TopicPoller::deletionFailed);
+      return CompletableFuture.completedFuture(recordGroupCleanup(
+          new GroupCleanupStats(0, groupIds.size(), Duration.ofNanos(System.nanoTime() - start))));
+    }
+
+    var deleted = new LongAdder();
+    var failed = new LongAdder();
+    var results = idlePollers.stream().map(poller -> {
+      var result = new CompletableFuture<Void>();
+      deletions.get(poller.getConsumerGroupId()).whenComplete((ignored, ex) -> {
+        var cause = ex instanceof ExecutionException || ex instanceof CompletionException ? ex.getCause() : ex;
+        if (cause == null || cause instanceof GroupIdNotFoundException) {
+          deleted.increment();
+          pollers.remove(poller.getTopic(), poller);
+        } else {
+          failed.increment();
+          poller.deletionFailed();
+          log.warn("Could not delete consumer group {}", poller.getConsumerGroupId(), cause);
+        }
+        result.complete(null);
+      });
+      return result;
+    }).toArray(CompletableFuture[]::new);
+
+    return CompletableFuture.allOf(results).thenApply(ignored -> {
+      var stats = recordGroupCleanup(
+          new GroupCleanupStats(deleted.sum(), failed.sum(), Duration.ofNanos(System.nanoTime() - start)));
+      log.info("Deleted consumer groups. {}", stats);
+      return stats;
+    });
+  }
+
+  /**
+   * @return totals of all consumer group cleanups issued by this client
+   */
+  public synchronized GroupCleanupStats getGroupCleanupStats() {
+    return groupCleanupStats;
+  }
+
+  /**
+   * Create topics and wait for their partition leaders with timeout configured by
+   * {@link SerumKafkaClientBuilder#withReadinessTimeout(Duration)}.
+   *
+   * @param topics - topics with partitions, replication factor and configs
+   * @see #createTopics(Collection, Duration)
+   */
+  public void createTopics(NewTopic... topics) {
+    createTopics(List.of(topics), consumerOptions.getReadinessTimeout());
+  }
+
+  /**
+   * Create topics with single batched admin request and wait until every partition of every topic has leader, so
+   * topics can be subscribed and published right away. Metadata is polled with exponential backoff from 10 to 500 ms.
+   * Topics which already exist are reused. Topics created by this method are deleted by {@link #deleteCreatedTopics()}.
+   *
+   * @param topics - topics with partitions, replication factor and configs
+   * @param timeout - maximal time of creation and leader election
+   * @throws KafkaClientException if any topic cannot be created
+   * @throws ConditionTimeoutException if topics are not created or partitions have no leader within timeout
+   */
+  public void createTopics(Collection<NewTopic> topics, Duration timeout) {
+    ensureOpen();
+    var deadline = System.nanoTime() + timeout.toNanos();
+    var topicNames = topics.stream().map(NewTopic::name).collect(Collectors.toList());
+    log.info("Creating topics: {}", topicNames);
+    var results = transport.createTopics(topics);
+    awaitAll(results.values(), deadline,
+        String.format("Topics %s were not created within %d ms", topicNames, timeout.toMillis()));
+
+    var exception = new KafkaClientException("Failed to create topics " + topicNames);
+    results.forEach((topic, result) -> {
+      var failure = failureOf(result);
+      if (failure == null) {
+        createdTopics.add(topic);
+      } else if (failure instanceof TopicExistsException) {
+        log.info("Topic {} already exists", topic);
+      } else {
+        exception.addSuppressed(failure);
+      }
+    });
+    if (exception.getSuppressed().length > 0) {
+      throw exception;
     }
+    awaitPartitionLeaders(topicNames, deadline, timeout);
+  }
+
+  /**
+   * @param topics - names of topics
+   * @see #deleteTopics(Collection)
+   */
+  public void deleteTopics(String... topics) {
+    deleteTopics(List.of(topics));
+  }
+
+  /**
+   * Delete topics with single batched admin request, blocking until broker accepted deletion. Topics which do not
+   * exist are skipped.
+   *
+   * @param topics - names of topics
+   * @throws KafkaClientException if any topic cannot be deleted
+   */
+  public void deleteTopics(Collection<String> topics) {
+    ensureOpen();
+    log.info("Deleting topics: {}", topics);
+    var results = transport.deleteTopics(topics);
+    awaitAll(results.values(), System.nanoTime() + TOPIC_DELETION_TIMEOUT.toNanos(),
+        String.format("Topics %s were not deleted within %d ms", topics, TOPIC_DELETION_TIMEOUT.toMillis()));
+
+    var exception = new KafkaClientException("Failed to delete topics " + topics);
+    results.forEach((topic, result) -> {
+      var failure = failureOf(result);
+      if (failure == null || failure instanceof UnknownTopicOrPartitionException) {
+        createdTopics.remove(topic);
+      } else {
+        exception.addSuppressed(failure);
+      }
+    });
+    if (exception.getSuppressed().length > 0) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Delete all topics created by {@link #createTopics(Collection, Duration)} of this client.
+   */
+  public void deleteCreatedTopics() {
+    if (!createdTopics.isEmpty()) {
+      deleteTopics(List.copyOf(createdTopics));
+    }
+  }
 
+  private static ProducerRecord<String, byte[]> encode(ProducerRecord<String, String> producerRecord) {
+    var value = producerRecord.value() == null ? null : producerRecord.value().getBytes(StandardCharsets.UTF_8);
+    return new ProducerRecord<>(producerRecord.topic(), producerRecord.partition(), producerRecord.timestamp(),
+        producerRecord.key(), value, producerRecord.headers());
+  }
+
+  private CompletableFuture<RecordMetadata> send(ProducerRecord<String, byte[]> producerRecord) {
+    var result = new CompletableFuture<RecordMetadata>();
+    var topicRecords = publishedRecords.get(producerRecord.topic());
+    if (topicRecords != null) {
+      topicRecords.sending();
+    }
+    var sentAt = System.currentTimeMillis();
+    try {
+      getProducer().send(producerRecord, (metadata, ex) -> {
+        if (ex == null) {
+          if (topicRecords != null) {
+            topicRecords.acknowledged(metadata.partition(), metadata.offset(), sentAt, System.currentTimeMillis());
+          }
+          result.complete(metadata);
+        } else {
+          if (topicRecords != null) {
+            topicRecords.failed();
+          }
+          result.completeExceptionally(
+              new KafkaClientException("Error when publishing event to topic " + producerRecord.topic(), ex));
+        }
+      });
+    } catch (RuntimeException ex) {
+      if (topicRecords != null) {
+        topicRecords.failed();
+      }
+      result.completeExceptionally(
+          new KafkaClientException("Error when publishing event to topic " + producerRecord.topic(), ex));
+    }
+    return result;
+  }
+
+  private void awaitPartitionLeaders(Collection<String> topics, long deadline, Duration timeout) {
+    var pending = new LinkedHashSet<>(topics);
+    var backoffMs = MIN_METADATA_BACKOFF_MS;
+    while (true) {
+      var descriptions = transport.describeTopics(List.copyOf(pending));
+      awaitAll(descriptions.values(), deadline,
+          String.format("Topics %s were not described within %d ms", pending, timeout.toMillis()));
+      descriptions.forEach((topic, description) -> {
+        if (failureOf(description) == null && description.join().partitions().stream()
+            .allMatch(partition -> partition.leader() != null && !partition.leader().isEmpty())) {
+          pending.remove(topic);
+        }
+      });
+      if (pending.isEmpty()) {
+        log.info("Topics {} have partition leaders", topics);
+        return;
+      }
+
+      var remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMs <= 0) {
+        throw new ConditionTimeoutException(String.format(
+            "Partitions of topics %s have no leader within %d ms", pending, timeout.toMillis()));
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(Math.min(backoffMs, remainingMs));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new KafkaClientException("Interrupted while waiting for partition leaders of topics " + pending, e);
+      }
+      backoffMs = Math.min(backoffMs * 2, MAX_METADATA_BACKOFF_MS);
+    }
+  }
+
+  /**
+   * Wait until all admin results are completed, successfully or not.
+   */
+  private static void awaitAll(Collection<? extends CompletableFuture<?>> results, long deadline,
+      String timeoutMessage) {
+    try {
+      CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+          .handle((ignored, ex) -> null)
+          .get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new ConditionTimeoutException(timeoutMessage);
+    } catch (ExecutionException e) {
+      throw new KafkaClientException("Admin request failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while waiting for admin request", e);
+    }
+  }
+
+  /**
+   * @return cause of failure of completed result, null if it completed successfully
+   */
+  private static Throwable failureOf(CompletableFuture<?> result) {
+    var ex = result.handle((ignored, failure) -> failure).join();
+    return ex instanceof ExecutionException || ex instanceof CompletionException ? ex.getCause() : ex;
+  }
+
+  private synchronized GroupCleanupStats recordGroupCleanup(GroupCleanupStats stats) {
+    groupCleanupStats = groupCleanupStats.add(stats);
+    return stats;
+  }
+
+  private void shutdownExecutor() {
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(EXECUTOR_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("Kafka client threads did not terminate in {} ms, interrupting them", EXECUTOR_TERMINATION_TIMEOUT_MS);
+        executorService.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executorService.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new KafkaClientException("Kafka client is closed");
+    }
   }
 
-  private synchronized KafkaProducer<String, String> getProducer() {
+  private synchronized Producer<String, byte[]> getProducer() {
+    ensureOpen();
     if (producer == null) {
-      producer = new KafkaProducer<>(producerProperties);
+      producer = transport.createProducer(producerProperties);
     }
     return producer;
   }
@@ -1,20 +1,63 @@
 package pl.net.testit.serum.kafka;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SerumKafkaClientBuilder {
 
+  private static final Logger log = LoggerFactory.getLogger(SerumKafkaClientBuilder.class);
+
+  private static final Set<String> CONSUMER_DESERIALIZER_PROPERTIES = Set.of("key.deserializer", "value.deserializer");
+  private static final Set<String> PRODUCER_SERIALIZER_PROPERTIES = Set.of("key.serializer", "value.serializer");
+
   private final Properties consumerProperties;
   private final Properties adminProperties;
   private final Properties producerProperties;
+  private final ConsumerOptions consumerOptions = new ConsumerOptions();
+  private final KafkaTransport transport;
+  private ExecutorService executor;
+  private boolean virtualThreads;
 
   public SerumKafkaClientBuilder(String bootstrapServers) {
+    this(bootstrapServers, null);
+  }
+
+  /**
+   * Build client using given transport instead of connecting to broker. Transport is not closed with client, admin
+   * properties are not used.
+   *
+   * @param transport - transport creating kafka clients
+   */
+  public SerumKafkaClientBuilder(KafkaTransport transport) {
+    this(null, transport);
+  }
+
+  private SerumKafkaClientBuilder(String bootstrapServers, KafkaTransport transport) {
     this.consumerProperties = getDefaultConsumerProperties(bootstrapServers);
     this.adminProperties = getDefaultAdminProperties(bootstrapServers);
     this.producerProperties = getDefaultProducerProperties(bootstrapServers);
+    this.transport = transport;
   }
 
+  /**
+   * Set property of kafka consumers. Keys are always read as String and values as raw bytes, so key and value
+   * deserializer properties are ignored with warning.
+   *
+   * @param key - consumer property name
+   * @param value - consumer property value
+   * @return this builder
+   */
   public SerumKafkaClientBuilder withConsumerProperty(String key, String value) {
+    if (CONSUMER_DESERIALIZER_PROPERTIES.contains(key)) {
+      log.warn("Consumer property {} is ignored, client reads keys as String and values as raw bytes", key);
+      return this;
+    }
     this.consumerProperties.setProperty(key, value);
     return this;
   }
@@ -24,28 +67,207 @@ public class SerumKafkaClientBuilder {
     return this;
   }
 
+  /**
+   * Set property of kafka producer. Keys are always written as String and values as raw bytes, so key and value
+   * serializer properties are ignored with warning.
+   *
+   * @param key - producer property name
+   * @param value - producer property value
+   * @return this builder
+   */
   public SerumKafkaClientBuilder withProducerProperty(String key, String value) {
+    if (PRODUCER_SERIALIZER_PROPERTIES.contains(key)) {
+      log.warn("Producer property {} is ignored, client writes keys as String and values as raw bytes", key);
+      return this;
+    }
     this.producerProperties.setProperty(key, value);
     return this;
   }
 
+  /**
+   * Set how far before subscription time consumers start reading topic. When topic is subscribed every assigned
+   * partition is positioned at the first event produced after subscription time minus look back instead of replaying
+   * topic from earliest offset. Defaults to 10 seconds.
+   *
+   * @param lookBack - look back window, compensates clock differences between producers and consumer
+   * @return this builder
+   * @throws IllegalArgumentException if look back is negative
+   */
+  public SerumKafkaClientBuilder withStartOffsetLookBack(Duration lookBack) {
+    Objects.requireNonNull(lookBack, "lookBack");
+    if (lookBack.isNegative()) {
+      throw new IllegalArgumentException("Start offset look back should not be negative, was " + lookBack);
+    }
+    this.consumerOptions.setStartOffsetLookBack(lookBack);
+    return this;
+  }
+
+  /**
+   * Set how topic pollers commit consumed offsets. Defaults to {@link CommitPolicy#none()} as consumer groups created
+   * by client are not reused.
+   *
+   * @param commitPolicy - commit policy
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withCommitPolicy(CommitPolicy commitPolicy) {
+    this.consumerOptions.setCommitPolicy(commitPolicy);
+    return this;
+  }
+
+  /**
+   * Set default limits of events kept by consumers. Can be overridden per subscription with
+   * {@link SerumKafkaClient#subscribe(Class, RetentionPolicy)}. Defaults to {@link RetentionPolicy#unbounded()}.
+   *
+   * @param retentionPolicy - retention policy
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withEventRetention(RetentionPolicy retentionPolicy) {
+    this.consumerOptions.setRetentionPolicy(retentionPolicy);
+    return this;
+  }
+
+  /**
+   * Keep all consumed events in memory-mapped segment files created in given directory instead of on-heap. Only
+   * compact index is kept on-heap, events are materialized when waits or callers iterate them. Segment files are not
+   * deleted so they can be used for post-mortem analysis. Retention policy is ignored when spill directory is set.
+   *
+   * @param directory - directory for segment files, created if missing
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withEventSpillDirectory(Path directory) {
+    this.consumerOptions.setSpillDirectory(directory);
+    return this;
+  }
+
+  /**
+   * Set how long {@link SerumKafkaConsumer#awaitReady()} waits for partitions of subscribed topic to be assigned.
+   * Defaults to 30 seconds.
+   *
+   * @param timeout - readiness timeout
+   * @return this builder
+   * @throws IllegalArgumentException if timeout is zero or negative
+   */
+  public SerumKafkaClientBuilder withReadinessTimeout(Duration timeout) {
+    Objects.requireNonNull(timeout, "timeout");
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("Readiness timeout should be positive, was " + timeout);
+    }
+    this.consumerOptions.setReadinessTimeout(timeout);
+    return this;
+  }
+
+  /**
+   * Read topics with partitions refreshed every 5 seconds.
+   *
+   * @return this builder
+   * @see #withManualAssignment(Duration)
+   */
+  public SerumKafkaClientBuilder withManualAssignment() {
+    return withManualAssignment(Duration.ofSeconds(5));
+  }
+
+  /**
+   * Read topics without consumer group. Topic pollers look up partitions of topic and assign them to their kafka
+   * consumers directly, so subscription does not wait for group join and rebalance, no offsets are committed and there
+   * are no groups to delete afterwards. Commit policy is ignored. Partitions added to topic are picked up when
+   * partitions are refreshed and read from the first event produced after subscription time minus look back.
+   *
+   * @param partitionRefreshInterval - how often topic metadata is checked for new partitions
+   * @return this builder
+   * @throws IllegalArgumentException if interval is zero or negative
+   */
+  public SerumKafkaClientBuilder withManualAssignment(Duration partitionRefreshInterval) {
+    Objects.requireNonNull(partitionRefreshInterval, "partitionRefreshInterval");
+    if (partitionRefreshInterval.isNegative() || partitionRefreshInterval.isZero()) {
+      throw new IllegalArgumentException("Partition refresh interval should be positive, was "
+          + partitionRefreshInterval);
+    }
+    this.consumerOptions.setManualAssignment(true);
+    this.consumerOptions.setPartitionRefreshInterval(partitionRefreshInterval);
+    return this;
+  }
+
+  /**
+   * Process polled records on worker tasks instead of poll thread, with queue of 500 records per worker.
+   *
+   * @param workers - number of workers per subscribed topic
+   * @return this builder
+   * @see #withPartitionWorkers(int, int)
+   */
+  public SerumKafkaClientBuilder withPartitionWorkers(int workers) {
+    return withPartitionWorkers(workers, 500);
+  }
+
+  /**
+   * Process polled records on worker tasks instead of poll thread, so filtering, decoding and deserialization of events
+   * scale with number of partitions. Every partition is assigned to one worker, so events of a partition are stored
+   * in order. Poll thread blocks when queue of a worker is full. Workers run on threads owned by poller of the topic,
+   * not on client executor, and offsets are committed only after workers processed polled records.
+   *
+   * @param workers - number of workers per subscribed topic, 0 processes records on poll thread
+   * @param queueCapacity - number of records queued per worker
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withPartitionWorkers(int workers, int queueCapacity) {
+    if (workers < 0 || queueCapacity < 1) {
+      throw new IllegalArgumentException("Workers should not be negative and queue capacity should be positive");
+    }
+    this.consumerOptions.setPartitionWorkers(workers);
+    this.consumerOptions.setPartitionQueueCapacity(queueCapacity);
+    return this;
+  }
+
+  /**
+   * Run topic poll loops on given executor instead of client's own pool. Every subscribed topic occupies one task for
+   * as long as it is subscribed, partition workers run on threads of their own. Executor is not shut down when client
+   * is closed.
+   *
+   * @param executor - executor owned by caller
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withExecutor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Run topic poll loops and dispatch of events to consumers on virtual threads. Requires Java 21 runtime, on older
+   * runtimes platform threads are used. Poll loops are run on executor set with {@link #withExecutor(ExecutorService)}
+   * when there is one.
+   *
+   * @return this builder
+   */
+  public SerumKafkaClientBuilder withVirtualThreads() {
+    this.virtualThreads = true;
+    this.consumerOptions.setVirtualThreads(true);
+    return this;
+  }
+
   public SerumKafkaClient build() {
-    return new SerumKafkaClient(consumerProperties, adminProperties, producerProperties);
+    var ownsExecutor = executor == null;
+    var clientExecutor = !ownsExecutor ? executor
+        : virtualThreads ? PollerExecutors.virtualThreads() : PollerExecutors.platformThreads();
+    var ownsTransport = transport == null;
+    var clientTransport = ownsTransport ? new BrokerKafkaTransport(adminProperties) : transport;
+    return new SerumKafkaClient(consumerProperties, producerProperties, consumerOptions, clientExecutor, ownsExecutor,
+        clientTransport, ownsTransport);
   }
 
   private static Properties getDefaultConsumerProperties(String bootstrapServers) {
     var props = new Properties();
-    props.put("bootstrap.servers", bootstrapServers);
+    if (bootstrapServers != null) {
+      props.put("bootstrap.servers", bootstrapServers);
+    }
     props.put("session.timeout.ms", "30000");
-    props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-    props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
     props.put("auto.offset.reset", "earliest");
     return props;
   }
 
   private static Properties getDefaultAdminProperties(String bootstrapServers) {
     var props = new Properties();
-    props.put("bootstrap.servers", bootstrapServers);
+    if (bootstrapServers != null) {
+      props.put("bootstrap.servers", bootstrapServers);
+    }
     props.put("request.timeout.ms", "50000");
     props.put("default.api.timeout.ms", "50000");
     return props;
@@ -53,14 +275,14 @@ public class SerumKafkaClientBuilder {
 
   private static Properties getDefaultProducerProperties(String bootstrapServers) {
     var props = new Properties();
-    props.put("bootstrap.servers", bootstrapServers);
+    if (bootstrapServers != null) {
+      props.put("bootstrap.servers", bootstrapServers);
+    }
     props.put("acks", "all");
     props.put("retries", 1);
     props.put("batch.size", 16384);
     props.put("linger.ms", 1);
     props.put("buffer.memory", 33554432);
-    props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-    props.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
     return props;
   }
 }
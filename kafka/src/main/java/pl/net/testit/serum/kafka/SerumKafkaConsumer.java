@@ -1,24 +1,36 @@
 package pl.net.testit.serum.kafka;
 
-import static org.awaitility.Awaitility.await;
-
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.function.BiFunction;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.record.TimestampType;
+import org.awaitility.core.ConditionTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.net.testit.serum.commons.json.JsonParser;
@@ -26,18 +38,44 @@ import pl.net.testit.serum.commons.json.JsonParser;
 public class SerumKafkaConsumer<T> {
 
   private static final Logger log = LoggerFactory.getLogger(SerumKafkaConsumer.class);
+  private static final int DEFAULT_PUBLISHER_BUFFER_SIZE = 256;
+  private final TopicPoller poller;
   private final String topic;
   private final String filter;
-  private final Properties properties;
-  private final ExecutorService executorService;
+  private final BytePatternMatcher filterMatcher;
+  private final JsonFieldFilter fieldFilter;
   private final Class<T> eventContentClass;
-  private final BiFunction<String, Class<T>, T> eventContentDeserializer;
-  private final List<KafkaEventWrapper<T>> events = Collections.synchronizedList(new ArrayList<>(100));
-  private final String consumerGroupId;
+  private final Function<String, T> eventContentDeserializer;
+  private final DeserializationCounter deserializationCounter = new DeserializationCounter();
+  private final EventStore<T> events;
+  private final EventMatcherRegistry<T> matcherRegistry = new EventMatcherRegistry<>();
+  private final Map<String, EventIndex<T>> headerIndexes = new HashMap<>();
+  private EventIndex<T> keyIndex;
+  private long ingestedCount;
+  private final Map<LatencyType, LatencyHistogram> latencies = new EnumMap<>(LatencyType.class);
+  private final List<Consumer<KafkaEventWrapper<T>>> eventListeners = new CopyOnWriteArrayList<>();
+  private final List<EventPublisher<T>> publishers = new CopyOnWriteArrayList<>();
+  private final List<Consumer<KafkaEventWrapper<T>>> storeObservers = new CopyOnWriteArrayList<>();
+  private final List<Runnable> unsubscribeListeners = new CopyOnWriteArrayList<>();
+  private final AtomicInteger activeWaits = new AtomicInteger();
+  private final LongAdder recordsFiltered = new LongAdder();
+  private final LongAdder recordsStored = new LongAdder();
   private final long subscribedAt;
   private boolean logAllEvents;
   private volatile boolean subscribed;
 
+  /**
+   * Subscribe topic with consumer polling in its own consumer group and retaining all events.
+   *
+   * @param executorService - executor running poll loop
+   * @param consumerGroupPrefix - prefix of generated consumer group id
+   * @param topic - subscribed topic
+   * @param filter - text event content has to contain
+   * @param properties - kafka consumer properties
+   * @param eventContentClass - class event content is deserialized to
+   * @deprecated use {@link SerumKafkaClient#subscribe(Class)}, consumers created by client share poller of topic
+   */
+  @Deprecated
   public SerumKafkaConsumer(
       ExecutorService executorService,
       String consumerGroupPrefix,
@@ -45,18 +83,47 @@ public class SerumKafkaConsumer<T> {
       String filter,
       Properties properties,
       Class<T> eventContentClass) {
-    this.topic = topic;
+    this(new TopicPoller(executorService, new BrokerKafkaTransport(properties), consumerGroupPrefix + UUID.randomUUID(),
+            topic, properties, new ConsumerOptions(), new PublishedRecords()),
+        filter, JsonFieldFilter.forEventClass(eventContentClass), eventContentClass, RetentionPolicy.unbounded(), null);
+  }
+
+  SerumKafkaConsumer(TopicPoller poller, Class<T> eventContentClass, RetentionPolicy retentionPolicy,
+      Path spillDirectory) {
+    this(poller, eventContentClass.getAnnotation(KafkaEvent.class).filter(),
+        JsonFieldFilter.forEventClass(eventContentClass), eventContentClass, retentionPolicy, spillDirectory);
+  }
+
+  private SerumKafkaConsumer(TopicPoller poller, String filter, JsonFieldFilter fieldFilter,
+      Class<T> eventContentClass, RetentionPolicy retentionPolicy, Path spillDirectory) {
+    this.poller = poller;
+    this.topic = poller.getTopic();
     this.filter = filter;
-    this.properties = (Properties) properties.clone();
-    this.consumerGroupId = consumerGroupPrefix + UUID.randomUUID();
-    this.properties.put("group.id", consumerGroupId);
-    this.executorService = executorService;
+    this.filterMatcher = BytePatternMatcher.of(filter);
+    this.fieldFilter = fieldFilter;
     this.logAllEvents = true;
     this.eventContentClass = eventContentClass;
-    this.eventContentDeserializer = (eventContent, targetClass) -> JsonParser.fromJSON(eventContent, eventContentClass);
+    this.eventContentDeserializer = value -> JsonParser.fromJSON(value, eventContentClass);
+    this.events = spillDirectory == null
+        ? new BoundedEventStore<>(retentionPolicy)
+        : new MappedFileEventStore<>(spillDirectory, topic + "-" + UUID.randomUUID(), topic,
+            (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, eventContentDeserializer,
+                deserializationCounter, receivedAt, publishTimes));
+    this.subscribedAt = poller.currentTimeMillis();
+    for (LatencyType latencyType : LatencyType.values()) {
+      latencies.put(latencyType, new LatencyHistogram());
+    }
 
     subscribe();
-    subscribedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * @return consumer of every record of topic, ignoring filter and where conditions of event class
+   */
+  static <T> SerumKafkaConsumer<T> unfiltered(TopicPoller poller, Class<T> eventContentClass,
+      RetentionPolicy retentionPolicy, Path spillDirectory) {
+    return new SerumKafkaConsumer<>(poller, "", JsonFieldFilter.compile(), eventContentClass, retentionPolicy,
+        spillDirectory);
   }
 
   public SerumKafkaConsumer<T> setLogAllEvents(boolean logAllEvents) {
@@ -65,90 +132,589 @@ public class SerumKafkaConsumer<T> {
   }
 
   public SerumKafkaConsumer<T> unsubscribe() {
-    subscribed = false;
+    if (subscribed) {
+      subscribed = false;
+      poller.unregister(this);
+      publishers.forEach(EventPublisher::complete);
+      synchronized (events) {
+        events.close();
+      }
+      unsubscribeListeners.forEach(Runnable::run);
+    }
     return this;
   }
 
+  /**
+   * @param listener - called once consumer unsubscribes
+   */
+  void onUnsubscribe(Runnable listener) {
+    unsubscribeListeners.add(listener);
+  }
+
+  /**
+   * Wait for exactly one event matching filter. Wait completes as soon as matching event is consumed, so matching
+   * events consumed afterwards are not detected. When more than one matching event was consumed before the call, the
+   * wait times out.
+   *
+   * @param durationInSeconds - wait timeout
+   * @param filter - event predicate
+   * @return matching event
+   * @throws ConditionTimeoutException if exactly one matching event was not found within timeout
+   */
   public KafkaEventWrapper<T> waitForEvent(int durationInSeconds, Predicate<KafkaEventWrapper<T>> filter) {
     log.info("Waiting {} seconds for matching event on topic: {}", durationInSeconds, topic);
-
-    return await().timeout(Duration.ofSeconds(durationInSeconds)).pollInterval(Duration.ofMillis(100)).until(
-        () -> events.stream().filter(filter).collect(Collectors.toList()),
-        matchingEvents -> {
-          log.info("Expected 1 event on topic {} matching filter. Found {}", topic, matchingEvents.size());
-          return matchingEvents.size() == 1;
-        }
-    ).get(0);
+    return awaitMatchingEvents(durationInSeconds, 1, filter).get(0);
   }
 
+  /**
+   * @param durationInSeconds - wait timeout
+   * @param count - expected number of matching events
+   * @param filter - event predicate
+   * @return matching events in order of consumption
+   * @throws ConditionTimeoutException if exactly count matching events were not found within timeout
+   * @see #waitForEvent(int, Predicate)
+   */
   public List<KafkaEventWrapper<T>> waitForEvents(int durationInSeconds, int count,
       Predicate<KafkaEventWrapper<T>> filter) {
     log.info("Waiting {} seconds for matching {} events on topic: {}", durationInSeconds, count, topic);
+    return awaitMatchingEvents(durationInSeconds, count, filter);
+  }
 
-    return await().timeout(Duration.ofSeconds(durationInSeconds)).pollInterval(Duration.ofMillis(100)).until(
-        () -> events.stream().filter(filter).collect(Collectors.toList()),
-        matchingEvents -> {
-          log.info("Expected 1 event on topic {} matching filter. Found {}", topic, matchingEvents.size());
-          return matchingEvents.size() == count;
-        }
-    );
+  /**
+   * Wait until this consumer processed record published with given metadata and look for matching event among events
+   * consumed so far. Fails as soon as the record was consumed without matching event, instead of waiting for timeout.
+   *
+   * @param durationInSeconds - maximal time to consume published record
+   * @param published - metadata of published record, returned by publish methods of {@link SerumKafkaClient}
+   * @param filter - event predicate
+   * @return the first matching event
+   * @throws AssertionError if published record was consumed and no matching event was found
+   * @throws ConditionTimeoutException if published record was not consumed within timeout
+   */
+  public KafkaEventWrapper<T> waitForEvent(int durationInSeconds, RecordMetadata published,
+      Predicate<KafkaEventWrapper<T>> filter) {
+    return waitForEventUpToOffset(durationInSeconds, published.partition(), published.offset(), filter);
+  }
 
+  /**
+   * @param durationInSeconds - maximal time to consume record at given offset
+   * @param partition - partition of topic
+   * @param offset - offset of the last record which should be consumed before filter is evaluated
+   * @param filter - event predicate
+   * @return the first matching event
+   * @see #waitForEvent(int, RecordMetadata, Predicate)
+   */
+  public KafkaEventWrapper<T> waitForEventUpToOffset(int durationInSeconds, int partition, long offset,
+      Predicate<KafkaEventWrapper<T>> filter) {
+    log.info("Waiting {} seconds for matching event up to partition {} offset {} on topic: {}", durationInSeconds,
+        partition, offset, topic);
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationInSeconds);
+    try {
+      return awaitMatchOrWatermark(deadline, poller.awaitProcessed(Map.of(partition, offset + 1)), filter)
+          .orElseThrow(() -> new AssertionError(String.format(
+              "No event on topic %s matching filter up to partition %d offset %d", topic, partition, offset)));
+    } catch (TimeoutException e) {
+      throw new ConditionTimeoutException(String.format(
+          "Partition %d of topic %s was not consumed up to offset %d within %d seconds%nConsumer metrics: %s",
+          partition, topic, offset, durationInSeconds, getMetrics()));
+    }
+  }
+
+  /**
+   * Assert that no matching event is consumed. End offsets of topic are captured when method is called and assertion
+   * passes as soon as position of kafka consumer reached them and this consumer processed all records polled before,
+   * so negative tests do not wait for timeout. Position is used instead of offsets of consumed records, as end offset
+   * can follow transaction markers or offsets removed by compaction. Events consumed before the call are checked as
+   * well and assertion fails as soon as matching event is found.
+   *
+   * @param durationInSeconds - maximal time for consumer to catch up with end offsets, assertion fails when it does
+   *     not, as absence of event is not proven then
+   * @param filter - predicate of unexpected event
+   * @throws AssertionError if matching event was consumed or consumer did not catch up within duration
+   */
+  public void assertNoEvent(int durationInSeconds, Predicate<KafkaEventWrapper<T>> filter) {
+    log.info("Asserting no matching event on topic {} within {} seconds", topic, durationInSeconds);
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationInSeconds);
+    var caughtUp = poller.getReady()
+        .thenCompose(ignored -> poller.fetchEndOffsets())
+        .thenCompose(poller::awaitPosition);
+    try {
+      var unexpected = awaitMatchOrWatermark(deadline, caughtUp, filter);
+      if (unexpected.isPresent()) {
+        var record = unexpected.get().getConsumerRecord();
+        throw new AssertionError(String.format("Unexpected event on topic %s:%n headers: %s%n content: %s", topic,
+            parseHeaders(record.headers()), record.value()));
+      }
+      log.info("No matching event on topic {} up to end offsets", topic);
+    } catch (TimeoutException e) {
+      throw new AssertionError(String.format("Consumer of topic %s did not catch up with end offsets within %d "
+              + "seconds, absence of event is not proven. Lag by partition: %s%nConsumer metrics: %s", topic,
+          durationInSeconds, poller.getPartitionLag(), getMetrics()));
+    }
+  }
+
+  /**
+   * @return publisher of events with buffer of 256 events per subscriber
+   * @see #publisher(int)
+   */
+  public Flow.Publisher<KafkaEventWrapper<T>> publisher() {
+    return publisher(DEFAULT_PUBLISHER_BUFFER_SIZE);
+  }
+
+  /**
+   * Publisher of events accepted by this consumer after subscriber subscribed it, in order of consumption within
+   * partition. Events are delivered on poll thread or on thread requesting them. When subscriber does not request
+   * events fast enough and its buffer is full, partitions are paused until it catches up. Pausing is applied to
+   * topic poller, so other consumers of the same topic in this client receive events later as well. Subscribers are
+   * completed when consumer unsubscribes. Publisher whose all subscribers cancelled stops receiving events.
+   *
+   * @param bufferSize - number of events buffered per subscriber before partitions are paused
+   * @return publisher of events
+   */
+  public Flow.Publisher<KafkaEventWrapper<T>> publisher(int bufferSize) {
+    var publisher = new EventPublisher<T>(poller, bufferSize);
+    Consumer<KafkaEventWrapper<T>> listener = publisher::onEvent;
+    publisher.whenTerminated(() -> {
+      removeEventListener(listener);
+      publishers.remove(publisher);
+    });
+    publishers.add(publisher);
+    addEventListener(listener);
+    if (!subscribed) {
+      publisher.complete();
+    }
+    return publisher;
+  }
+
+  /**
+   * Wait for event with given record key. Events are looked up in hash index of keys, which is built from retained
+   * events on first use and then maintained as events are consumed.
+   *
+   * @param durationInSeconds - wait timeout
+   * @param key - record key
+   * @return the first event with given key
+   */
+  public KafkaEventWrapper<T> waitForEventByKey(int durationInSeconds, String key) {
+    return waitForEventByKey(durationInSeconds, key, event -> true);
+  }
+
+  /**
+   * @param durationInSeconds - wait timeout
+   * @param key - record key
+   * @param filter - additional predicate, evaluated only for events with given key
+   * @return the first event with given key matching filter
+   * @see #waitForEventByKey(int, String)
+   */
+  public KafkaEventWrapper<T> waitForEventByKey(int durationInSeconds, String key,
+      Predicate<KafkaEventWrapper<T>> filter) {
+    log.info("Waiting {} seconds for event with key {} on topic: {}", durationInSeconds, key, topic);
+    return awaitIndexedEvents(durationInSeconds, 1, filter, this::keyIndex, key).get(0);
+  }
+
+  /**
+   * Wait for event with given header value. Events are looked up in hash index of the header, which is built from
+   * retained events on first wait for the header and then maintained as events are consumed.
+   *
+   * @param durationInSeconds - wait timeout
+   * @param headerName - header name
+   * @param headerValue - header value, compared with the last header of given name
+   * @return the first event with given header value
+   */
+  public KafkaEventWrapper<T> waitForEventByHeader(int durationInSeconds, String headerName, String headerValue) {
+    return waitForEventByHeader(durationInSeconds, headerName, headerValue, event -> true);
+  }
+
+  /**
+   * @param durationInSeconds - wait timeout
+   * @param headerName - header name
+   * @param headerValue - header value, compared with the last header of given name
+   * @param filter - additional predicate, evaluated only for events with given header value
+   * @return the first event with given header value matching filter
+   * @see #waitForEventByHeader(int, String, String)
+   */
+  public KafkaEventWrapper<T> waitForEventByHeader(int durationInSeconds, String headerName, String headerValue,
+      Predicate<KafkaEventWrapper<T>> filter) {
+    log.info("Waiting {} seconds for event with header {}={} on topic: {}", durationInSeconds, headerName,
+        headerValue, topic);
+    return awaitIndexedEvents(durationInSeconds, 1, filter, () -> headerIndex(headerName), headerValue).get(0);
+  }
+
+  /**
+   * @return true if poller of topic has partitions assigned and positioned
+   * @see #awaitReady()
+   */
+  public boolean isReady() {
+    var ready = poller.getReady();
+    return ready.isDone() && !ready.isCompletedExceptionally();
+  }
+
+  /**
+   * @return future completed with this consumer when it is ready, see {@link #awaitReady(Duration)}
+   */
+  public CompletableFuture<SerumKafkaConsumer<T>> whenReady() {
+    return poller.getReady().thenApply(ignored -> this);
+  }
+
+  /**
+   * Wait with timeout configured by {@link SerumKafkaClientBuilder#withReadinessTimeout(Duration)} until consumer is
+   * ready.
+   *
+   * @return this consumer
+   * @see #awaitReady(Duration)
+   */
+  public SerumKafkaConsumer<T> awaitReady() {
+    return awaitReady(poller.getReadinessTimeout());
+  }
+
+  /**
+   * Wait until poller of topic joined its consumer group and has all assigned partitions positioned. Events published
+   * after this method returns are consumed, so tests can publish right away instead of sleeping. Returns immediately
+   * when other consumer of this client already subscribed the same topic.
+   *
+   * @param timeout - maximal wait time
+   * @return this consumer
+   * @throws ConditionTimeoutException if consumer is not ready within timeout
+   */
+  public SerumKafkaConsumer<T> awaitReady(Duration timeout) {
+    try {
+      poller.getReady().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+      return this;
+    } catch (TimeoutException e) {
+      throw new ConditionTimeoutException(String.format(
+          "Partitions of topic %s were not assigned within %d ms", topic, timeout.toMillis()));
+    } catch (ExecutionException e) {
+      throw new KafkaClientException("Subscription of topic " + topic + " failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while waiting for subscription of topic " + topic, e);
+    }
   }
 
   public boolean isSubscribed() {
     return subscribed;
   }
 
+  /**
+   * @return offset commits issued by poller shared by all consumers of this topic
+   */
+  public CommitStats getCommitStats() {
+    return poller.getCommitStats();
+  }
+
+  /**
+   * @return number of events currently kept by this consumer and visible to waits
+   */
+  public int getRetainedEventsCount() {
+    synchronized (events) {
+      return events.size();
+    }
+  }
+
+  /**
+   * @return number of events dropped because of retention policy
+   */
+  public long getEvictedEventsCount() {
+    synchronized (events) {
+      return events.getEvictedCount();
+    }
+  }
+
+  /**
+   * @return content deserializations performed, failed and skipped for events consumed by this consumer
+   */
+  public DeserializationStats getDeserializationStats() {
+    return deserializationCounter.getStats();
+  }
+
+  /**
+   * @param latencyType - measured latency
+   * @return latency percentiles of events consumed by this consumer
+   */
+  public LatencyStats getLatencyStats(LatencyType latencyType) {
+    return latencies.get(latencyType).getStats();
+  }
+
+  /**
+   * @return snapshot of records polled, filtered and stored, partition lag, poll, commit and deserialization latency
+   *     and buffered events
+   */
+  public ConsumerMetrics getMetrics() {
+    int retainedEvents;
+    long retainedBytes;
+    long evictedEvents;
+    synchronized (events) {
+      retainedEvents = events.size();
+      retainedBytes = events.getRetainedBytes();
+      evictedEvents = events.getEvictedCount();
+    }
+    return new ConsumerMetrics(topic, poller.getConsumerGroupId(), poller.getRecordsPolled(), recordsFiltered.sum(),
+        recordsStored.sum(), deserializationCounter.getStats(), deserializationCounter.getDurations(), retainedEvents,
+        retainedBytes, evictedEvents, poller.getPartitionLag(), poller.getPollLatencies(), poller.getCommitStats(),
+        poller.getCommitLatencies());
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public Class<T> getEventClass() {
+    return eventContentClass;
+  }
+
+  /**
+   * @return consumer group of topic poller, null when client assigns partitions manually
+   */
   public String getConsumerGroupId() {
-    return consumerGroupId;
+    return poller.getConsumerGroupId();
+  }
+
+  void processRecord(PolledRecord polledRecord) {
+    var rawRecord = polledRecord.getRawRecord();
+    if (rawRecord.timestampType().equals(TimestampType.CREATE_TIME) && rawRecord.timestamp() < subscribedAt) {
+      recordsFiltered.increment();
+      return;
+    }
+
+    if (!filterMatcher.matches(polledRecord.getValue()) || !fieldFilter.matches(polledRecord.getValue())) {
+      recordsFiltered.increment();
+      return;
+    }
+
+    var record = polledRecord.getConsumerRecord();
+    if (logAllEvents) {
+      log.info("New event on topic {}:\n headers: {}\n content: {}", topic,
+          parseHeaders(record.headers()), record.value());
+    }
+
+    var eventWrapper = new KafkaEventWrapper<>(record, eventContentDeserializer, deserializationCounter,
+        polledRecord.getReceivedAt(), polledRecord.getPublishTimes());
+    deserializationCounter.recordIngested();
+    if (activeWaits.get() > 0 && poller.hasPartitionWorkers()) {
+      preloadContent(eventWrapper);
+    }
+    recordLatencies(eventWrapper);
+    eventListeners.forEach(listener -> listener.accept(eventWrapper));
+    synchronized (events) {
+      events.add(eventWrapper);
+      recordsStored.increment();
+      var sequence = ingestedCount++;
+      if (keyIndex != null || !headerIndexes.isEmpty()) {
+        var firstRetainedSequence = firstRetainedSequence();
+        if (keyIndex != null) {
+          keyIndex.add(eventWrapper, sequence, firstRetainedSequence);
+        }
+        headerIndexes.values().forEach(index -> index.add(eventWrapper, sequence, firstRetainedSequence));
+      }
+      matcherRegistry.onEvent(eventWrapper);
+      storeObservers.forEach(observer -> observer.accept(eventWrapper));
+    }
+  }
+
+  /**
+   * Register listener called on poll thread with every event accepted by this consumer, before it is stored.
+   */
+  void addEventListener(Consumer<KafkaEventWrapper<T>> listener) {
+    eventListeners.add(listener);
+  }
+
+  void removeEventListener(Consumer<KafkaEventWrapper<T>> listener) {
+    eventListeners.remove(listener);
+  }
+
+  /**
+   * Pass retained events to observer and then every stored event, both under store lock, so no event is missed or
+   * passed twice.
+   */
+  void observeEvents(Consumer<KafkaEventWrapper<T>> observer) {
+    synchronized (events) {
+      events.forEach(observer);
+      storeObservers.add(observer);
+    }
+  }
+
+  void stopObservingEvents(Consumer<KafkaEventWrapper<T>> observer) {
+    storeObservers.remove(observer);
+  }
+
+  int getObserverCount() {
+    return storeObservers.size();
+  }
+
+  /**
+   * Deserialize content on partition worker, so waits evaluating predicates under store lock do not serialize it.
+   */
+  private void preloadContent(KafkaEventWrapper<T> event) {
+    try {
+      event.getContent();
+    } catch (EventDeserializationException e) {
+      // error is kept by event and thrown when predicate reads content
+    }
   }
 
-  private SerumKafkaConsumer<T> subscribe() {
+  private void recordLatencies(KafkaEventWrapper<T> event) {
+    var publishTimes = event.getPublishTimes();
+    if (publishTimes != null) {
+      publishTimes.whenPublished(() -> latencies.get(LatencyType.PRODUCE_TO_BROKER)
+          .recordMillis(publishTimes.getAcknowledgedAt() - publishTimes.getSentAt()));
+    }
+    var brokerTimestamp = event.getBrokerTimestamp().orElse(event.getTimestamp());
+    latencies.get(LatencyType.BROKER_TO_CONSUMER).recordMillis(event.getReceivedAt() - brokerTimestamp);
+  }
+
+  private void subscribe() {
     subscribed = true;
     if (filter.isEmpty()) {
       log.info("Subscribed topic {}", topic);
     } else {
       log.info("Subscribed topic {} for events with content containing: {}", topic, filter);
     }
+    if (!fieldFilter.isEmpty()) {
+      log.info("Consuming only events from topic {} matching: {}", topic, fieldFilter);
+    }
+    poller.register(this);
+  }
 
-    executorService.submit(() -> {
-      var kafkaTopicConsumer = new KafkaConsumer<String, String>(properties);
-      kafkaTopicConsumer.subscribe(List.of(topic));
-      while (subscribed) {
-        var consumerRecords = kafkaTopicConsumer.poll(Duration.of(100, ChronoUnit.MILLIS));
-        kafkaTopicConsumer.commitSync();
-        consumerRecords.forEach(this::processRecord);
-      }
-      log.info("Unsubscribing topic {}", topic);
-      kafkaTopicConsumer.unsubscribe();
-    });
+  private List<KafkaEventWrapper<T>> awaitMatchingEvents(int durationInSeconds, int count,
+      Predicate<KafkaEventWrapper<T>> filter) {
+    return awaitEvents(durationInSeconds, count, "matching filter",
+        () -> matcherRegistry.register(filter, count, true, events),
+        matcherRegistry::unregister);
+  }
 
-    return this;
+  private List<KafkaEventWrapper<T>> awaitIndexedEvents(int durationInSeconds, int count,
+      Predicate<KafkaEventWrapper<T>> filter, Supplier<EventIndex<T>> indexSupplier, String value) {
+    EventIndex<T> index;
+    synchronized (events) {
+      index = indexSupplier.get();
+    }
+    return awaitEvents(durationInSeconds, count, "with " + index.getName() + " " + value,
+        () -> index.register(value, filter, count, firstRetainedSequence()),
+        waiter -> index.unregister(value, waiter));
   }
 
-  private void processRecord(ConsumerRecord<String, String> record) {
-    if (record.timestampType().equals(TimestampType.CREATE_TIME) && record.timestamp() < subscribedAt) {
-      return;
+  /**
+   * @param register - registers waiter, called under store lock
+   * @param unregister - unregisters waiter, called under store lock
+   */
+  private List<KafkaEventWrapper<T>> awaitEvents(int durationInSeconds, int count, String description,
+      Supplier<EventWaiter<T>> register, Consumer<EventWaiter<T>> unregister) {
+    EventWaiter<T> waiter;
+    activeWaits.incrementAndGet();
+    synchronized (events) {
+      waiter = register.get();
     }
 
-    if (!record.value().contains(filter)) {
-      return;
+    try {
+      var matchingEvents = waiter.getResult().get(durationInSeconds, TimeUnit.SECONDS);
+      var matchedAt = System.currentTimeMillis();
+      matchingEvents.stream()
+          .map(KafkaEventWrapper::getPublishTimes)
+          .filter(Objects::nonNull)
+          .forEach(publishTimes -> publishTimes.whenPublished(() -> latencies.get(LatencyType.PUBLISH_TO_MATCH)
+              .recordMillis(matchedAt - publishTimes.getSentAt())));
+      log.info("Found {} events on topic {} {}", matchingEvents.size(), topic, description);
+      return matchingEvents;
+    } catch (TimeoutException e) {
+      throw new ConditionTimeoutException(String.format(
+          "Expected %d events on topic %s %s within %d seconds. Found %d%nConsumer metrics: %s",
+          count, topic, description, durationInSeconds, waiter.getMatchedCount(), getMetrics()));
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new KafkaClientException("Error when matching events on topic " + topic, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while waiting for events on topic " + topic, e);
+    } finally {
+      activeWaits.decrementAndGet();
+      synchronized (events) {
+        unregister.accept(waiter);
+      }
     }
+  }
 
-    if (logAllEvents) {
-      log.info("New event on topic {}:\n headers: {}\n content: {}", topic,
-          parseHeaders(record.headers()), record.value());
+  /**
+   * Wait until matching event is found or watermark is reached, whichever happens first. Events are matched as they
+   * are stored, before watermark covering them is reached.
+   *
+   * @return the first matching event, empty if watermark was reached without matching event
+   * @throws TimeoutException if neither happened before deadline
+   */
+  private Optional<KafkaEventWrapper<T>> awaitMatchOrWatermark(long deadlineNanos, CompletableFuture<?> watermark,
+      Predicate<KafkaEventWrapper<T>> filter) throws TimeoutException {
+    EventWaiter<T> waiter;
+    activeWaits.incrementAndGet();
+    synchronized (events) {
+      waiter = matcherRegistry.register(filter, 1, false, events);
     }
 
     try {
-      T deserializedMessage = eventContentDeserializer.apply(record.value(), eventContentClass);
-      var eventWrapper = new KafkaEventWrapper<>(record, deserializedMessage);
-      events.add(eventWrapper);
-    } catch (Exception ex) {
-      ex.printStackTrace();
+      try {
+        CompletableFuture.anyOf(waiter.getResult(), watermark)
+            .get(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        if (!waiter.getResult().isDone()) {
+          throw e;
+        }
+      } catch (ExecutionException e) {
+        // outcome is read from waiter and watermark below
+      }
+      if (waiter.getResult().isDone()) {
+        return Optional.of(waiter.getResult().join().get(0));
+      }
+      watermark.join();
+      return Optional.empty();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new KafkaClientException("Error when matching events on topic " + topic, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaClientException("Interrupted while waiting for events on topic " + topic, e);
+    } finally {
+      activeWaits.decrementAndGet();
+      watermark.cancel(false);
+      synchronized (events) {
+        matcherRegistry.unregister(waiter);
+      }
     }
   }
 
+  /**
+   * Called under store lock.
+   */
+  private EventIndex<T> keyIndex() {
+    if (keyIndex == null) {
+      keyIndex = buildIndex(EventIndex.byKey(events.positionLookup()));
+    }
+    return keyIndex;
+  }
+
+  /**
+   * Called under store lock.
+   */
+  private EventIndex<T> headerIndex(String headerName) {
+    return headerIndexes.computeIfAbsent(headerName,
+        name -> buildIndex(EventIndex.byHeader(name, events.positionLookup())));
+  }
+
+  private EventIndex<T> buildIndex(EventIndex<T> index) {
+    var firstRetainedSequence = firstRetainedSequence();
+    var sequence = firstRetainedSequence;
+    for (KafkaEventWrapper<T> event : events) {
+      index.add(event, sequence++, firstRetainedSequence);
+    }
+    log.debug("Built index by {} of {} events on topic {}", index.getName(), index.getIndexedCount(), topic);
+    return index;
+  }
+
+  /**
+   * Store evicts the oldest events first, so retained events are the last size of ingested ones. Called under store
+   * lock.
+   */
+  private long firstRetainedSequence() {
+    return ingestedCount - events.size();
+  }
 
   private String parseHeaders(Headers headers) {
     return StreamSupport.stream(headers.spliterator(), false)
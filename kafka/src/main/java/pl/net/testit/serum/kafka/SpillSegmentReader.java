@@ -0,0 +1,142 @@
+package pl.net.testit.serum.kafka;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+/**
+ * Reads records from segment files written when event spill directory is set, for post-mortem analysis of consumed
+ * events.
+ *
+ * <p>Segment is a sequence of records followed by end marker: partition (int), offset (long), timestamp (long),
+ * timestamp type (byte), received at (long), sent at (long), acknowledged at (long), key, value, header count (int) and
+ * headers. Send and acknowledgement times are -1 when unknown. Key, value, header key and header value are written as
+ * length (int, -1 for null) followed by UTF-8 bytes. End marker is partition equal to {@value #END_MARKER}. It follows
+ * the last written record, so segment of a test which did not close its consumer can be read as well.
+ */
+public final class SpillSegmentReader {
+
+  static final int END_MARKER = -1;
+
+  private SpillSegmentReader() {
+  }
+
+  /**
+   * @param segmentFile - segment file
+   * @param topic - topic of records, segment files are named after it
+   * @return records written to segment in consumption order
+   */
+  public static List<SpilledRecord> read(Path segmentFile, String topic) {
+    ByteBuffer buffer;
+    try {
+      buffer = ByteBuffer.wrap(Files.readAllBytes(segmentFile));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read event segment file " + segmentFile, e);
+    }
+    var records = new ArrayList<SpilledRecord>();
+    while (buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) != END_MARKER) {
+      records.add(readRecord(buffer, topic));
+    }
+    return records;
+  }
+
+  /**
+   * Reads record at current position of buffer and moves position past it.
+   */
+  static SpilledRecord readRecord(ByteBuffer buffer, String topic) {
+    var partition = buffer.getInt();
+    var offset = buffer.getLong();
+    var timestamp = buffer.getLong();
+    var timestampType = timestampType(buffer.get());
+    var receivedAt = buffer.getLong();
+    var sentAt = buffer.getLong();
+    var acknowledgedAt = buffer.getLong();
+    var key = getBytes(buffer);
+    var value = getBytes(buffer);
+    var headers = new RecordHeaders();
+    var headerCount = buffer.getInt();
+    for (int i = 0; i < headerCount; i++) {
+      headers.add(string(getBytes(buffer)), getBytes(buffer));
+    }
+
+    var record = new ConsumerRecord<>(topic, partition, offset, timestamp, timestampType,
+        key == null ? -1 : key.length, value == null ? -1 : value.length,
+        string(key), string(value), headers, Optional.empty());
+    return new SpilledRecord(record, receivedAt, sentAt, acknowledgedAt);
+  }
+
+  private static TimestampType timestampType(byte id) {
+    for (TimestampType timestampType : TimestampType.values()) {
+      if (timestampType.id == id) {
+        return timestampType;
+      }
+    }
+    return TimestampType.NO_TIMESTAMP_TYPE;
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer) {
+    var length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String string(byte[] value) {
+    return value == null ? null : new String(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Record read from segment with times of its consumption and publication.
+   */
+  public static class SpilledRecord {
+
+    private final ConsumerRecord<String, String> record;
+    private final long receivedAt;
+    private final long sentAt;
+    private final long acknowledgedAt;
+
+    SpilledRecord(ConsumerRecord<String, String> record, long receivedAt, long sentAt, long acknowledgedAt) {
+      this.record = record;
+      this.receivedAt = receivedAt;
+      this.sentAt = sentAt;
+      this.acknowledgedAt = acknowledgedAt;
+    }
+
+    public ConsumerRecord<String, String> getRecord() {
+      return record;
+    }
+
+    /**
+     * @return epoch millis when record was polled
+     */
+    public long getReceivedAt() {
+      return receivedAt;
+    }
+
+    /**
+     * @return epoch millis when record was sent by this client, -1 if unknown
+     */
+    public long getSentAt() {
+      return sentAt;
+    }
+
+    /**
+     * @return epoch millis when record was acknowledged by broker, -1 if unknown
+     */
+    public long getAcknowledgedAt() {
+      return acknowledgedAt;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package pl.net.testit.serum.kafka;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Positions newly assigned partitions at the first offset produced at or after given timestamp, so poller does not
+ * download and discard topic history published before subscription. Partitions without such records are positioned at
+ * their end offset captured before the lookup. Partition is positioned only once, later reassignments keep the
+ * position of the consumer. Listener given on creation is notified after every assignment was positioned.
+ */
+class StartOffsetResolver implements ConsumerRebalanceListener {
+
+  private static final Logger log = LoggerFactory.getLogger(StartOffsetResolver.class);
+
+  private final Consumer<?, ?> consumer;
+  private final long startTimestamp;
+  private final java.util.function.Consumer<Collection<TopicPartition>> positionedListener;
+  private final Set<TopicPartition> positionedPartitions = new HashSet<>();
+
+  StartOffsetResolver(Consumer<?, ?> consumer, long startTimestamp,
+      java.util.function.Consumer<Collection<TopicPartition>> positionedListener) {
+    this.consumer = consumer;
+    this.startTimestamp = startTimestamp;
+    this.positionedListener = positionedListener;
+  }
+
+  @Override
+  public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+  }
+
+  @Override
+  public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+    var newPartitions = partitions.stream()
+        .filter(partition -> !positionedPartitions.contains(partition))
+        .collect(Collectors.toSet());
+    if (newPartitions.isEmpty()) {
+      positionedListener.accept(partitions);
+      return;
+    }
+
+    var endOffsets = consumer.endOffsets(newPartitions);
+    var offsetsForTimes = consumer.offsetsForTimes(newPartitions.stream()
+        .collect(Collectors.toMap(Function.identity(), partition -> startTimestamp)));
+
+    for (TopicPartition partition : newPartitions) {
+      var offsetForTime = offsetsForTimes.get(partition);
+      var startOffset = offsetForTime != null ? offsetForTime.offset() : endOffsets.get(partition);
+      log.debug("Positioning partition {} at offset {}", partition, startOffset);
+      consumer.seek(partition, startOffset);
+      positionedPartitions.add(partition);
+    }
+    positionedListener.accept(partitions);
+  }
+}
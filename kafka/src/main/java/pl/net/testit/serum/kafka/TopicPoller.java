@@ -0,0 +1,666 @@
+package pl.net.testit.serum.kafka;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.net.testit.serum.kafka.PublishedRecords.TopicRecords;
+
+/**
+ * Single kafka consumer polling one topic on behalf of all {@link SerumKafkaConsumer} views subscribed to that topic
+ * within one {@link SerumKafkaClient}. Views can be added and removed without touching the underlying kafka consumer,
+ * so it does not cause consumer group rebalance. Poll loop is started with the first view and stopped with the last
+ * one.
+ */
+class TopicPoller {
+
+  private static final Logger log = LoggerFactory.getLogger(TopicPoller.class);
+  private static final long STOP_TIMEOUT_MS = 30000;
+  private static final Duration POLL_TIMEOUT = Duration.of(100, ChronoUnit.MILLIS);
+  private static final long LAG_REFRESH_MS = 1000;
+  private static final Duration OFFSETS_REQUEST_TIMEOUT = Duration.ofSeconds(1);
+  private static final Duration METADATA_REQUEST_TIMEOUT = Duration.ofSeconds(1);
+
+  private final String topic;
+  private final String consumerGroupId;
+  private final Properties properties;
+  private final ExecutorService executorService;
+  private final KafkaTransport transport;
+  private final ConsumerOptions options;
+  private final OffsetCommitter offsetCommitter;
+  private final TopicRecords publishedRecords;
+  private final List<SerumKafkaConsumer<?>> views = new CopyOnWriteArrayList<>();
+  private final Map<TopicPartition, Set<Object>> pauseRequests = new ConcurrentHashMap<>();
+  private final LatencyHistogram pollLatencies = new LatencyHistogram();
+  private final LongAdder recordsPolled = new LongAdder();
+  private volatile Map<Integer, Long> partitionLag = Map.of();
+  private final Map<Integer, Long> processedOffsets = new ConcurrentHashMap<>();
+  private final List<OffsetWatermark> watermarks = new CopyOnWriteArrayList<>();
+  private final Queue<CompletableFuture<Map<Integer, Long>>> endOffsetRequests = new ConcurrentLinkedQueue<>();
+  private final Queue<PositionRequest> positionRequests = new ConcurrentLinkedQueue<>();
+  private long lagRefreshedAt;
+  private long partitionsRefreshedAt;
+  private volatile boolean running;
+  private boolean deleting;
+  private volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+  private Future<?> pollTask;
+  private volatile PartitionDispatcher dispatcher;
+  private volatile Thread pollThread;
+
+  TopicPoller(ExecutorService executorService, KafkaTransport transport, String consumerGroupId, String topic,
+      Properties properties, ConsumerOptions options, PublishedRecords publishedRecords) {
+    this.topic = topic;
+    this.consumerGroupId = consumerGroupId;
+    this.properties = (Properties) properties.clone();
+    if (consumerGroupId == null) {
+      this.properties.remove("group.id");
+      this.properties.put("enable.auto.commit", "false");
+    } else {
+      this.properties.put("group.id", consumerGroupId);
+      this.properties.putIfAbsent("enable.auto.commit", "false");
+    }
+    this.executorService = executorService;
+    this.transport = transport;
+    this.options = options;
+    this.offsetCommitter = new OffsetCommitter(
+        consumerGroupId == null ? CommitPolicy.none() : options.getCommitPolicy());
+    this.publishedRecords = publishedRecords.track(topic);
+  }
+
+  void register(SerumKafkaConsumer<?> view) {
+    while (true) {
+      Future<?> stoppingTask;
+      synchronized (this) {
+        if (deleting) {
+          throw new IllegalStateException("Consumer group " + consumerGroupId + " of poller is being deleted");
+        }
+        if (running || pollTask == null || pollTask.isDone()) {
+          views.add(view);
+          if (!running) {
+            start();
+          }
+          return;
+        }
+        if (isPollerThread()) {
+          throw new IllegalStateException("Poller of topic " + topic + " cannot be restarted by its own thread");
+        }
+        stoppingTask = pollTask;
+      }
+      // kafka consumer of stopping poll loop is closed before a new one joins the group
+      awaitStopped(stoppingTask);
+    }
+  }
+
+  void unregister(SerumKafkaConsumer<?> view) {
+    Future<?> stoppedTask;
+    synchronized (this) {
+      views.remove(view);
+      if (!views.isEmpty() || !running) {
+        return;
+      }
+      stop();
+      stoppedTask = pollTask;
+    }
+    awaitStopped(stoppedTask);
+  }
+
+  /**
+   * Stop poll loop regardless of registered views and wait until kafka consumer is closed, unless called by thread of
+   * the poll loop.
+   */
+  void close() {
+    Future<?> stoppedTask;
+    synchronized (this) {
+      views.clear();
+      if (running) {
+        stop();
+      }
+      stoppedTask = pollTask;
+    }
+    awaitStopped(stoppedTask);
+  }
+
+  /**
+   * Stop fetching partition until every owner which requested pause resumes it. Pause is applied by poll loop before
+   * next poll, so it affects all views of the topic.
+   *
+   * @param owner - requester of pause
+   * @param partition - partition of polled topic
+   */
+  void pause(Object owner, int partition) {
+    pauseRequests.computeIfAbsent(new TopicPartition(topic, partition), p -> ConcurrentHashMap.newKeySet()).add(owner);
+  }
+
+  /**
+   * Withdraw all pauses requested by owner.
+   *
+   * @param owner - requester of pause
+   */
+  void resume(Object owner) {
+    pauseRequests.values().forEach(owners -> owners.remove(owner));
+  }
+
+  boolean isPauseRequested(int partition) {
+    var owners = pauseRequests.get(new TopicPartition(topic, partition));
+    return owners != null && !owners.isEmpty();
+  }
+
+  /**
+   * @return future completed when poll loop has partitions assigned and positioned, so records published afterwards
+   *     are consumed, or completed exceptionally when poller stops or fails before that
+   */
+  CompletableFuture<Void> getReady() {
+    return ready;
+  }
+
+  Duration getReadinessTimeout() {
+    return options.getReadinessTimeout();
+  }
+
+  String getTopic() {
+    return topic;
+  }
+
+  /**
+   * @return consumer group of kafka consumer, null when partitions are assigned manually
+   */
+  String getConsumerGroupId() {
+    return consumerGroupId;
+  }
+
+  CommitStats getCommitStats() {
+    return offsetCommitter.getStats();
+  }
+
+  LatencyStats getCommitLatencies() {
+    return offsetCommitter.getCommitLatencies();
+  }
+
+  /**
+   * @return duration of poll calls, including time waiting for records
+   */
+  LatencyStats getPollLatencies() {
+    return pollLatencies.getStats();
+  }
+
+  long getRecordsPolled() {
+    return recordsPolled.sum();
+  }
+
+  /**
+   * @return number of records between consumer position and end offset of every assigned partition, refreshed by poll
+   *     loop once per second
+   */
+  Map<Integer, Long> getPartitionLag() {
+    return partitionLag;
+  }
+
+  /**
+   * End offsets are fetched by poll loop before its next poll, as kafka consumer can be used only by poll thread.
+   *
+   * @return future completed with end offset of every assigned partition, or completed exceptionally when poller stops
+   */
+  CompletableFuture<Map<Integer, Long>> fetchEndOffsets() {
+    var request = new CompletableFuture<Map<Integer, Long>>();
+    endOffsetRequests.add(request);
+    if (!running) {
+      request.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " is not running"));
+    }
+    return request;
+  }
+
+  /**
+   * Watermark is reached when records of every given partition below given offset are processed by all views, or
+   * were skipped because they precede position at which partition was assigned. Cancel returned future to stop
+   * tracking it.
+   *
+   * @param nextOffsets - offset following the last awaited record by partition
+   * @return future completed when watermark is reached, or completed exceptionally when poller stops
+   */
+  CompletableFuture<Void> awaitProcessed(Map<Integer, Long> nextOffsets) {
+    var watermark = new OffsetWatermark(nextOffsets);
+    watermarks.add(watermark);
+    if (!running) {
+      watermark.reached.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " is not running"));
+    }
+    if (watermark.isReached(processedOffsets)) {
+      watermarks.remove(watermark);
+    }
+    return watermark.reached;
+  }
+
+  /**
+   * Position of kafka consumer is checked by poll loop after every poll, as kafka consumer can be used only by poll
+   * thread. Unlike {@link #awaitProcessed(Map)} it does not depend on offsets of processed records, so it is reached
+   * also when end offset follows transaction markers or offsets removed by compaction. Cancel returned future to stop
+   * tracking it.
+   *
+   * @param endOffsets - end offset by partition
+   * @return future completed when position of kafka consumer reached end offset of every given partition and all
+   *     records polled before are processed by all views, or completed exceptionally when poller stops
+   */
+  CompletableFuture<Void> awaitPosition(Map<Integer, Long> endOffsets) {
+    var request = new PositionRequest(endOffsets);
+    positionRequests.add(request);
+    if (!running) {
+      request.reached.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " is not running"));
+    }
+    return request.reached;
+  }
+
+  /**
+   * @return true if records are processed by partition workers instead of poll thread
+   */
+  boolean hasPartitionWorkers() {
+    return options.getPartitionWorkers() > 0;
+  }
+
+  /**
+   * @return current time of transport, see {@link KafkaTransport#currentTimeMillis()}
+   */
+  long currentTimeMillis() {
+    return transport.currentTimeMillis();
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Mark stopped poller whose consumer group is about to be deleted. Such poller is never started again, subscriber of
+   * the topic gets a new poller instead.
+   *
+   * @return false if poller is running, its poll loop did not exit yet or it is already being deleted
+   */
+  synchronized boolean markDeleting() {
+    if (running || deleting || pollTask != null && !pollTask.isDone()) {
+      return false;
+    }
+    deleting = true;
+    return true;
+  }
+
+  /**
+   * Allow poller to be started again after deletion of its consumer group failed.
+   */
+  synchronized void deletionFailed() {
+    deleting = false;
+  }
+
+  synchronized boolean isDeleting() {
+    return deleting;
+  }
+
+  private void start() {
+    if (consumerGroupId == null) {
+      log.info("Starting poller of topic {} with manually assigned partitions", topic);
+    } else {
+      log.info("Starting poller of topic {} in consumer group {}", topic, consumerGroupId);
+    }
+    if (ready.isDone()) {
+      ready = new CompletableFuture<>();
+    }
+    processedOffsets.clear();
+    running = true;
+    var startTimestamp = transport.currentTimeMillis() - options.getStartOffsetLookBack().toMillis();
+    pollTask = executorService.submit(() -> poll(startTimestamp));
+  }
+
+  /**
+   * Signal poll loop to stop without waiting for it. Called under lock of poller.
+   */
+  private void stop() {
+    running = false;
+    var pollDispatcher = dispatcher;
+    if (pollDispatcher != null) {
+      // poll thread waiting for space in worker queue gives up
+      pollDispatcher.stop();
+    }
+    ready.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " stopped before it was ready"));
+    var stopped = new KafkaClientException("Poller of topic " + topic + " stopped");
+    watermarks.forEach(watermark -> watermark.reached.completeExceptionally(stopped));
+    watermarks.clear();
+    positionRequests.forEach(request -> request.reached.completeExceptionally(stopped));
+    positionRequests.clear();
+  }
+
+  /**
+   * Wait until poll loop exits and closes kafka consumer. Called without lock of poller, so views are not blocked
+   * meanwhile. Poll and worker threads do not wait for themselves, their loop exits once they return to it.
+   */
+  private void awaitStopped(Future<?> task) {
+    if (task == null || isPollerThread()) {
+      return;
+    }
+    try {
+      task.get(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | CancellationException e) {
+      log.warn("Poller of topic {} did not stop cleanly", topic, e);
+    } catch (TimeoutException e) {
+      log.warn("Poller of topic {} did not stop in {} ms, interrupting it", topic, STOP_TIMEOUT_MS);
+      task.cancel(true);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean isPollerThread() {
+    var pollDispatcher = dispatcher;
+    return Thread.currentThread() == pollThread || pollDispatcher != null && pollDispatcher.isWorkerThread();
+  }
+
+  private void poll(long startTimestamp) {
+    pollThread = Thread.currentThread();
+    var workers = options.getPartitionWorkers();
+    // workers run on pool of poller, so they cannot starve poll loops sharing client executor
+    var workerExecutor = workers == 0 ? null
+        : options.isVirtualThreads() ? PollerExecutors.virtualThreads() : PollerExecutors.workerThreads(topic, workers);
+    dispatcher = workers == 0 ? null : new PartitionDispatcher(workerExecutor, topic, workers,
+        options.getPartitionQueueCapacity(), this::dispatchToViews);
+    // offset following the last record handed to views or workers, by partition
+    var dispatchedOffsets = new HashMap<Integer, Long>();
+    try (var kafkaTopicConsumer = transport.createConsumer(properties)) {
+      var startOffsetResolver = new StartOffsetResolver(kafkaTopicConsumer, startTimestamp,
+          partitions -> onPartitionsPositioned(kafkaTopicConsumer, partitions));
+      if (consumerGroupId != null) {
+        kafkaTopicConsumer.subscribe(List.of(topic), startOffsetResolver);
+      }
+      while (running) {
+        completeEndOffsetRequests(kafkaTopicConsumer);
+        if (consumerGroupId == null && !refreshAssignedPartitions(kafkaTopicConsumer, startOffsetResolver)) {
+          // kafka consumer without assigned partitions cannot be polled
+          TimeUnit.MILLISECONDS.sleep(POLL_TIMEOUT.toMillis());
+          continue;
+        }
+        applyPauseRequests(kafkaTopicConsumer);
+        var pollStart = System.nanoTime();
+        var consumerRecords = kafkaTopicConsumer.poll(POLL_TIMEOUT);
+        pollLatencies.recordNanos(System.nanoTime() - pollStart);
+        recordsPolled.add(consumerRecords.count());
+        var receivedAt = System.currentTimeMillis();
+        var notDispatched = new TreeMap<TopicPartition, Long>(Comparator.comparing(TopicPartition::partition));
+        for (var consumerRecord : consumerRecords) {
+          var publishTimes = publishedRecords.get(consumerRecord.partition(), consumerRecord.offset());
+          var polledRecord = new PolledRecord(consumerRecord, receivedAt, publishTimes);
+          if (dispatcher == null) {
+            dispatchToViews(polledRecord);
+          } else if (!notDispatched.isEmpty() || !dispatcher.dispatch(polledRecord)) {
+            notDispatched.putIfAbsent(new TopicPartition(topic, consumerRecord.partition()), consumerRecord.offset());
+            continue;
+          }
+          dispatchedOffsets.put(consumerRecord.partition(), consumerRecord.offset() + 1);
+        }
+        // records dropped by stopped dispatcher are not committed
+        notDispatched.forEach(kafkaTopicConsumer::seek);
+        var commitDue = offsetCommitter.isCommitDue(consumerRecords.count());
+        if (commitDue && dispatcher != null) {
+          // position is committed, so records handed to workers have to be processed first
+          dispatcher.awaitIdle();
+        }
+        offsetCommitter.afterPoll(kafkaTopicConsumer, consumerRecords.count(), commitDue);
+        completePositionRequests(kafkaTopicConsumer, dispatchedOffsets);
+        refreshPartitionLag(kafkaTopicConsumer);
+      }
+      if (dispatcher != null) {
+        dispatcher.close();
+      }
+      offsetCommitter.beforeClose(kafkaTopicConsumer);
+      log.info("Unsubscribing topic {}", topic);
+      kafkaTopicConsumer.unsubscribe();
+    } catch (InterruptedException e) {
+      log.warn("Poller of topic {} interrupted", topic);
+      running = false;
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException ex) {
+      log.error("Poller of topic {} failed", topic, ex);
+      running = false;
+      ready.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      partitionLag = Map.of();
+      failEndOffsetRequests();
+      failPositionRequests();
+      if (dispatcher != null) {
+        dispatcher.stop();
+        dispatcher = null;
+        workerExecutor.shutdown();
+      }
+      pollThread = null;
+    }
+  }
+
+  /**
+   * Assign all partitions of topic to kafka consumer and position partitions which were not assigned before. Topic
+   * metadata is fetched once per partition refresh interval, or on every call until topic has partitions.
+   *
+   * @return false if no partitions are assigned, so consumer cannot be polled
+   */
+  private boolean refreshAssignedPartitions(Consumer<?, ?> kafkaTopicConsumer,
+      StartOffsetResolver startOffsetResolver) {
+    var assignment = kafkaTopicConsumer.assignment();
+    var now = System.currentTimeMillis();
+    if (!assignment.isEmpty() && now - partitionsRefreshedAt < options.getPartitionRefreshInterval().toMillis()) {
+      return true;
+    }
+    partitionsRefreshedAt = now;
+    List<PartitionInfo> partitionInfos;
+    try {
+      partitionInfos = kafkaTopicConsumer.partitionsFor(topic, METADATA_REQUEST_TIMEOUT);
+    } catch (org.apache.kafka.common.errors.TimeoutException e) {
+      log.debug("Partitions of topic {} not fetched within {} ms", topic, METADATA_REQUEST_TIMEOUT.toMillis());
+      return !assignment.isEmpty();
+    }
+    var partitions = partitionInfos == null ? Set.<TopicPartition>of() : partitionInfos.stream()
+        .map(partitionInfo -> new TopicPartition(topic, partitionInfo.partition()))
+        .collect(Collectors.toSet());
+    if (!partitions.isEmpty() && !assignment.containsAll(partitions)) {
+      log.info("Assigning partitions {} of topic {}", partitions, topic);
+      kafkaTopicConsumer.assign(partitions);
+      startOffsetResolver.onPartitionsAssigned(partitions);
+    }
+    return !kafkaTopicConsumer.assignment().isEmpty();
+  }
+
+  private void refreshPartitionLag(Consumer<?, ?> kafkaTopicConsumer) {
+    var now = System.currentTimeMillis();
+    if (now - lagRefreshedAt < LAG_REFRESH_MS) {
+      return;
+    }
+    lagRefreshedAt = now;
+    var assignment = kafkaTopicConsumer.assignment();
+    if (assignment.isEmpty()) {
+      partitionLag = Map.of();
+      return;
+    }
+    try {
+      var lag = new TreeMap<Integer, Long>();
+      kafkaTopicConsumer.endOffsets(assignment, OFFSETS_REQUEST_TIMEOUT).forEach((partition, endOffset) ->
+          lag.put(partition.partition(),
+              Math.max(endOffset - kafkaTopicConsumer.position(partition, OFFSETS_REQUEST_TIMEOUT), 0)));
+      partitionLag = Collections.unmodifiableMap(lag);
+    } catch (org.apache.kafka.common.errors.TimeoutException e) {
+      log.debug("End offsets of topic {} not fetched within {} ms", topic, OFFSETS_REQUEST_TIMEOUT.toMillis());
+    }
+  }
+
+  private void onPartitionsPositioned(Consumer<?, ?> kafkaTopicConsumer, Collection<TopicPartition> partitions) {
+    for (TopicPartition partition : partitions) {
+      processedOffsets.putIfAbsent(partition.partition(), kafkaTopicConsumer.position(partition));
+    }
+    notifyWatermarks();
+    if (!ready.isDone()) {
+      log.info("Poller of topic {} is ready with partitions {}", topic, partitions);
+      ready.complete(null);
+    }
+  }
+
+  private void dispatchToViews(PolledRecord polledRecord) {
+    views.forEach(view -> view.processRecord(polledRecord));
+    var record = polledRecord.getRawRecord();
+    processedOffsets.merge(record.partition(), record.offset() + 1, Math::max);
+    notifyWatermarks();
+  }
+
+  private void notifyWatermarks() {
+    if (!watermarks.isEmpty()) {
+      watermarks.removeIf(watermark -> watermark.reached.isDone() || watermark.isReached(processedOffsets));
+    }
+  }
+
+  private void completeEndOffsetRequests(Consumer<?, ?> kafkaTopicConsumer) {
+    if (endOffsetRequests.isEmpty()) {
+      return;
+    }
+    var requests = new ArrayList<CompletableFuture<Map<Integer, Long>>>();
+    CompletableFuture<Map<Integer, Long>> request;
+    while ((request = endOffsetRequests.poll()) != null) {
+      requests.add(request);
+    }
+    try {
+      var endOffsets = new TreeMap<Integer, Long>();
+      kafkaTopicConsumer.endOffsets(kafkaTopicConsumer.assignment(), OFFSETS_REQUEST_TIMEOUT)
+          .forEach((partition, endOffset) -> endOffsets.put(partition.partition(), endOffset));
+      requests.forEach(endOffsetsRequest -> endOffsetsRequest.complete(Collections.unmodifiableMap(endOffsets)));
+    } catch (KafkaException ex) {
+      requests.forEach(endOffsetsRequest -> endOffsetsRequest.completeExceptionally(ex));
+    }
+  }
+
+  private void completePositionRequests(Consumer<?, ?> kafkaTopicConsumer, Map<Integer, Long> dispatchedOffsets) {
+    if (positionRequests.isEmpty()) {
+      return;
+    }
+    var assignment = kafkaTopicConsumer.assignment();
+    for (var iterator = positionRequests.iterator(); iterator.hasNext(); ) {
+      var request = iterator.next();
+      if (request.reached.isDone()) {
+        iterator.remove();
+      } else if (isPositionReached(kafkaTopicConsumer, assignment, request.endOffsets)) {
+        iterator.remove();
+        // records below position may still be queued for partition workers
+        var polledOffsets = new HashMap<Integer, Long>();
+        request.endOffsets.keySet().stream()
+            .filter(dispatchedOffsets::containsKey)
+            .forEach(partition -> polledOffsets.put(partition, dispatchedOffsets.get(partition)));
+        awaitProcessed(polledOffsets).whenComplete((ignored, ex) -> {
+          if (ex == null) {
+            request.reached.complete(null);
+          } else {
+            request.reached.completeExceptionally(ex);
+          }
+        });
+      }
+    }
+  }
+
+  private boolean isPositionReached(Consumer<?, ?> kafkaTopicConsumer, Set<TopicPartition> assignment,
+      Map<Integer, Long> endOffsets) {
+    for (Map.Entry<Integer, Long> endOffset : endOffsets.entrySet()) {
+      var partition = new TopicPartition(topic, endOffset.getKey());
+      try {
+        if (!assignment.contains(partition)
+            || kafkaTopicConsumer.position(partition, OFFSETS_REQUEST_TIMEOUT) < endOffset.getValue()) {
+          return false;
+        }
+      } catch (org.apache.kafka.common.errors.TimeoutException e) {
+        log.debug("Position of partition {} not fetched within {} ms", partition, OFFSETS_REQUEST_TIMEOUT.toMillis());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void failPositionRequests() {
+    PositionRequest request;
+    while ((request = positionRequests.poll()) != null) {
+      request.reached.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " stopped"));
+    }
+  }
+
+  private void failEndOffsetRequests() {
+    CompletableFuture<Map<Integer, Long>> request;
+    while ((request = endOffsetRequests.poll()) != null) {
+      request.completeExceptionally(new KafkaClientException("Poller of topic " + topic + " stopped"));
+    }
+  }
+
+  private void applyPauseRequests(Consumer<?, ?> kafkaTopicConsumer) {
+    if (pauseRequests.isEmpty()) {
+      return;
+    }
+    var paused = kafkaTopicConsumer.paused();
+    var toPause = new ArrayList<TopicPartition>();
+    var toResume = new ArrayList<TopicPartition>();
+    for (TopicPartition partition : kafkaTopicConsumer.assignment()) {
+      var pauseRequested = isPauseRequested(partition.partition());
+      if (pauseRequested && !paused.contains(partition)) {
+        toPause.add(partition);
+      } else if (!pauseRequested && paused.contains(partition)) {
+        toResume.add(partition);
+      }
+    }
+    if (!toPause.isEmpty()) {
+      kafkaTopicConsumer.pause(toPause);
+    }
+    if (!toResume.isEmpty()) {
+      kafkaTopicConsumer.resume(toResume);
+    }
+  }
+
+  private static class PositionRequest {
+
+    private final Map<Integer, Long> endOffsets;
+    private final CompletableFuture<Void> reached = new CompletableFuture<>();
+
+    private PositionRequest(Map<Integer, Long> endOffsets) {
+      this.endOffsets = Map.copyOf(endOffsets);
+    }
+  }
+
+  private static class OffsetWatermark {
+
+    private final Map<Integer, Long> nextOffsets;
+    private final CompletableFuture<Void> reached = new CompletableFuture<>();
+
+    private OffsetWatermark(Map<Integer, Long> nextOffsets) {
+      this.nextOffsets = Map.copyOf(nextOffsets);
+    }
+
+    private boolean isReached(Map<Integer, Long> processedOffsets) {
+      for (Map.Entry<Integer, Long> nextOffset : nextOffsets.entrySet()) {
+        if (nextOffset.getValue() > processedOffsets.getOrDefault(nextOffset.getKey(), 0L)) {
+          return false;
+        }
+      }
+      reached.complete(null);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,490 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.awaitility.core.ConditionTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.net.testit.serum.commons.json.JsonEntity;
+
+/**
+ * Scenarios run against every {@link KafkaTransport}, so in-memory transport behaves as real broker.
+ */
+public abstract class AbstractSerumKafkaClientTest {
+
+  protected static final String TOPIC = "TOPIC_1";
+  protected SerumKafkaClient kafkaClient;
+
+  protected abstract SerumKafkaClientBuilder clientBuilder();
+
+  @BeforeEach
+  void createClient() {
+    kafkaClient = clientBuilder().build();
+  }
+
+  @AfterEach
+  void closeClient() {
+    kafkaClient.close();
+  }
+
+  @Test
+  void kafkaClientTest() {
+    // given message published before client subscribe topic
+    var message1 = "{'type':'type1','number':1}".replace("'", "\"");
+    kafkaClient.publishEvent(TOPIC, message1);
+
+    // when client subscribe to topic
+    var event1Consumer = kafkaClient.subscribe(Event1.class);
+    var event2Consumer = kafkaClient.subscribe(Event2.class);
+
+    // and messages are published
+    var message2 = "{'type':'type2','number':2}".replace("'", "\"");
+    var message3 = "{'owner':'Dog'}".replace("'", "\"");
+
+    kafkaClient.publishEvent(TOPIC, message2);
+    kafkaClient.publishEvent(TOPIC, message3);
+
+    // then message published before subscription should not be found
+    assertThrows(ConditionTimeoutException.class, () -> {
+      event1Consumer.waitForEvent(5, f -> f.getContent().type.equals("type1"));
+    });
+
+    // and messages published after subscription should be found
+    var event2 = event1Consumer.waitForEvent(5, f -> true);
+    var event3 = event2Consumer.waitForEvent(5, f -> f.getContent().owner.equals("Dog"));
+
+    assertAll(
+        () -> assertThat(event2.getContent().type).isEqualTo("type2"),
+        () -> assertThat(event2.getContent().number).isEqualTo(2),
+        () -> assertThat(event3.getContent().owner).isEqualTo("Dog")
+    );
+
+  }
+
+  @Test
+  void typedEventPublishingTest() {
+    // given client subscribed to topic
+    var consumer = kafkaClient.subscribe(Event2.class);
+
+    // when typed event is published with key and header
+    var event = new Event2();
+    event.owner = "Cat";
+    kafkaClient.publish(KafkaEventRecord.of(event).withKey("cat-1").withHeader("correlationId", "c-1"));
+
+    // then consumed event should have the same content, key and header
+    var consumed = consumer.waitForEvent(5, f -> "cat-1".equals(f.getKey()));
+    assertAll(
+        () -> assertThat(consumed.getContent().owner).isEqualTo("Cat"),
+        () -> assertThat(consumed.getHeader("correlationId").orElseThrow()).isEqualTo("c-1")
+    );
+  }
+
+  @Test
+  void waitForEventByKeyAndHeaderTest() {
+    // given event published before and after subscription
+    var consumer = kafkaClient.subscribe(Event2.class);
+    var first = new Event2();
+    first.owner = "Horse";
+    kafkaClient.publish(KafkaEventRecord.of(first).withKey("horse-1").withHeader("correlationId", "h-1"));
+    consumer.waitForEventByKey(5, "horse-1");
+
+    // when events are awaited by key and header
+    var second = new Event2();
+    second.owner = "Pony";
+    kafkaClient.publishAsync(KafkaEventRecord.of(second).withKey("horse-2").withHeader("correlationId", "h-2"));
+    var byKey = consumer.waitForEventByKey(5, "horse-2");
+    var byHeader = consumer.waitForEventByHeader(5, "correlationId", "h-1");
+
+    // then events should be found by indexes
+    assertAll(
+        () -> assertThat(byKey.getContent().owner).isEqualTo("Pony"),
+        () -> assertThat(byHeader.getContent().owner).isEqualTo("Horse"),
+        () -> assertThrows(ConditionTimeoutException.class, () -> consumer.waitForEventByKey(1, "horse-3"))
+    );
+  }
+
+  @Test
+  void awaitReadyTest() {
+    // given consumer which is ready
+    var consumer = kafkaClient.subscribe(Event2.class).awaitReady();
+    var isReady = consumer.isReady();
+
+    // when event is published right after readiness
+    var event = new Event2();
+    event.owner = "Ready";
+    kafkaClient.publish(event, "ready-1");
+
+    // then it should be consumed and another consumer of the topic should be ready immediately
+    assertAll(
+        () -> assertThat(isReady).isTrue(),
+        () -> assertThat(consumer.waitForEventByKey(5, "ready-1").getContent().owner).isEqualTo("Ready"),
+        () -> assertThat(kafkaClient.subscribe(Event1.class).isReady()).isTrue()
+    );
+  }
+
+  @Test
+  void closeClientTest() {
+    // given client running poll loops on provided executor
+    var executor = Executors.newCachedThreadPool();
+    var client = clientBuilder().withExecutor(executor).build();
+    var consumer = client.subscribe(Event2.class);
+
+    // when client is closed
+    client.close();
+
+    // then consumers should be unsubscribed and provided executor left running
+    assertAll(
+        () -> assertThat(client.isClosed()).isTrue(),
+        () -> assertThat(consumer.isSubscribed()).isFalse(),
+        () -> assertThat(executor.isShutdown()).isFalse(),
+        () -> assertThrows(KafkaClientException.class, () -> client.subscribe(Event2.class))
+    );
+    executor.shutdown();
+  }
+
+  @Test
+  void consumerGroupCleanupTest() {
+    // given two clients subscribed to the same topic
+    var client1 = clientBuilder().build();
+    var client2 = clientBuilder().build();
+    var consumer1 = client1.subscribe(Event2.class);
+    var consumer2 = client2.subscribe(Event2.class);
+    var event = new Event2();
+    event.owner = "Cleaner";
+    kafkaClient.publish(event, "cleanup-1");
+    consumer1.waitForEvent(10, f -> "cleanup-1".equals(f.getKey()));
+    consumer2.waitForEvent(10, f -> "cleanup-1".equals(f.getKey()));
+
+    // when both unsubscribe and first client deletes its consumer groups
+    consumer1.unsubscribe();
+    consumer2.unsubscribe();
+    var stats = client1.deleteEmptyConsumerGroupsAsync().join();
+
+    // then only group of the first client should be deleted
+    assertAll(
+        () -> assertThat(stats.getGroupsDeleted()).isEqualTo(1),
+        () -> assertThat(stats.getGroupsFailed()).isEqualTo(0),
+        () -> assertThat(client1.getGroupCleanupStats().getGroupsDeleted()).isEqualTo(1),
+        () -> assertThat(client2.getGroupCleanupStats().getGroupsDeleted()).isEqualTo(0)
+    );
+    client1.close();
+    client2.close();
+  }
+
+  @Test
+  void eventPublisherTest() throws Exception {
+    // given subscriber of consumer publisher
+    var consumer = kafkaClient.subscribe(Event2.class);
+    var received = new LinkedBlockingQueue<String>();
+    consumer.publisher(2).subscribe(new Flow.Subscriber<>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(KafkaEventWrapper<Event2> item) {
+        received.add(item.getContent().owner);
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+
+    // when events are published
+    for (int i = 0; i < 5; i++) {
+      var event = new Event2();
+      event.owner = "flow-" + i;
+      kafkaClient.publish(event, "flow");
+    }
+
+    // then subscriber should receive them in order
+    var owners = new ArrayList<String>();
+    while (owners.size() < 5) {
+      var owner = received.poll(10, TimeUnit.SECONDS);
+      assertThat(owner).isNotNull();
+      if (owner.startsWith("flow-")) {
+        owners.add(owner);
+      }
+    }
+    assertThat(owners).containsExactly("flow-0", "flow-1", "flow-2", "flow-3", "flow-4").inOrder();
+    consumer.unsubscribe();
+  }
+
+  @Test
+  void loadGeneratorTest() {
+    // given load generator publishing 50 events/s for 2 seconds
+    var generator = KafkaLoadGenerator.of(kafkaClient, Event2.class, sequence -> {
+      var event = new Event2();
+      event.owner = "owner-" + sequence;
+      return event;
+    }).withRate(50).withDuration(Duration.ofSeconds(2)).withProducerThreads(2);
+
+    // when load is generated
+    var summary = generator.run();
+
+    // then all events should be acknowledged and consumed back
+    assertAll(
+        () -> assertThat(summary.getFailed()).isEqualTo(0),
+        () -> assertThat(summary.getAcknowledged()).isEqualTo(100),
+        () -> assertThat(summary.getReceived()).isEqualTo(100),
+        () -> assertThat(summary.getEndToEndLatency().getCount()).isEqualTo(100)
+    );
+  }
+
+  @Test
+  void loadGeneratorRejectsInvalidSettingsTest() {
+    var generator = KafkaLoadGenerator.of(kafkaClient, Event2.class, sequence -> new Event2());
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> generator.withRate(0)),
+        () -> assertThrows(IllegalArgumentException.class, () -> generator.withRate(Double.NaN)),
+        () -> assertThrows(IllegalArgumentException.class, () -> generator.withDuration(Duration.ofSeconds(-1))),
+        () -> assertThrows(NullPointerException.class, () -> generator.withDuration(null)),
+        () -> assertThrows(IllegalArgumentException.class, () -> generator.withProducerThreads(0))
+    );
+  }
+
+  @Test
+  void consumerMetricsTest() {
+    // given consumer of Event1 and published events of both classes
+    var consumer = kafkaClient.subscribe(Event1.class).awaitReady();
+    var event1 = new Event1();
+    event1.type = "metrics";
+    var event2 = new Event2();
+    event2.owner = "Metrics";
+    kafkaClient.publish(event2);
+    kafkaClient.publish(event1);
+    consumer.waitForEvent(5, event -> event.getContent().type.equals("metrics"));
+
+    // when wait times out
+    var exception = assertThrows(ConditionTimeoutException.class,
+        () -> consumer.waitForEvent(1, event -> event.getContent().type.equals("missing")));
+    var metrics = consumer.getMetrics();
+
+    // then metrics should count filtered and stored records and be attached to timeout message
+    assertAll(
+        () -> assertThat(metrics.getRecordsPolled()).isAtLeast(2),
+        () -> assertThat(metrics.getRecordsFiltered()).isAtLeast(1),
+        () -> assertThat(metrics.getRecordsStored()).isEqualTo(1),
+        () -> assertThat(metrics.getRecordsFailed()).isEqualTo(0),
+        () -> assertThat(metrics.getRetainedBytes()).isGreaterThan(0),
+        () -> assertThat(metrics.getPollLatency().getCount()).isGreaterThan(0),
+        () -> assertThat(metrics.getDeserializationLatency().getCount()).isEqualTo(1),
+        () -> assertThat(exception).hasMessageThat().contains("records polled"),
+        () -> assertThat(kafkaClient.getMetrics().getConsumers()).hasSize(1)
+    );
+  }
+
+  @Test
+  void manualAssignmentTest() {
+    try (var client = clientBuilder().withManualAssignment().build()) {
+      // given consumer without consumer group
+      var consumer = client.subscribe(Event2.class).awaitReady();
+
+      // when event is published
+      var event = new Event2();
+      event.owner = "Manual";
+      client.publish(event, "manual-1");
+      var consumed = consumer.waitForEventByKey(5, "manual-1");
+      consumer.unsubscribe();
+
+      // then it should be consumed and there should be no consumer group to delete
+      assertAll(
+          () -> assertThat(consumer.getConsumerGroupId()).isNull(),
+          () -> assertThat(consumed.getContent().owner).isEqualTo("Manual"),
+          () -> assertThat(client.deleteEmptyConsumerGroupsAsync().join().getGroupsDeleted()).isEqualTo(0)
+      );
+    }
+  }
+
+  @Test
+  void eventCorrelationTest() {
+    // given consumers of two event classes and events with different correlation ids
+    var event1Consumer = kafkaClient.subscribe(Event1.class).awaitReady();
+    var event2Consumer = kafkaClient.subscribe(Event2.class);
+    var event1 = new Event1();
+    event1.type = "correlated";
+    var event2 = new Event2();
+    event2.owner = "Correlated";
+    kafkaClient.publish(KafkaEventRecord.of(event1).withKey("order-7"));
+    kafkaClient.publish(KafkaEventRecord.of(event2).withHeader("orderId", "order-8"));
+
+    // when event completing tuple is published
+    kafkaClient.publish(KafkaEventRecord.of(event2).withHeader("orderId", "order-7"));
+    var correlated = kafkaClient.correlate()
+        .on(event1Consumer, CorrelationKey.recordKey())
+        .on(event2Consumer, CorrelationKey.header("orderId"))
+        .waitForCorrelated(5);
+
+    // then events with the same key should be correlated
+    assertAll(
+        () -> assertThat(correlated.getKey()).isEqualTo("order-7"),
+        () -> assertThat(correlated.get(event1Consumer).getContent().type).isEqualTo("correlated"),
+        () -> assertThat(correlated.get(event2Consumer).getHeader("orderId").orElse(null)).isEqualTo("order-7"),
+        () -> assertThrows(ConditionTimeoutException.class, () -> kafkaClient.correlate()
+            .on(event1Consumer, CorrelationKey.recordKey())
+            .on(event2Consumer, CorrelationKey.header("orderId"))
+            .waitForCorrelated(1, "order-8"))
+    );
+  }
+
+  @Test
+  void concurrentCorrelationWaitsTest() throws Exception {
+    // given correlation waited for two keys at once
+    var event1Consumer = kafkaClient.subscribe(Event1.class).awaitReady();
+    var event2Consumer = kafkaClient.subscribe(Event2.class).awaitReady();
+    var correlation = kafkaClient.correlate()
+        .on(event1Consumer, CorrelationKey.recordKey())
+        .on(event2Consumer, CorrelationKey.header("orderId"));
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      var first = CompletableFuture.supplyAsync(() -> correlation.waitForCorrelated(10, "order-21"), executor);
+      var second = CompletableFuture.supplyAsync(() -> correlation.waitForCorrelated(10, "order-22"), executor);
+      await().atMost(Duration.ofSeconds(5)).until(() -> event1Consumer.getObserverCount() == 2);
+
+      // when events of both keys are published
+      var event1 = new Event1();
+      event1.type = "concurrent";
+      var event2 = new Event2();
+      event2.owner = "Concurrent";
+      for (String key : List.of("order-21", "order-22")) {
+        kafkaClient.publish(KafkaEventRecord.of(event1).withKey(key));
+        kafkaClient.publish(KafkaEventRecord.of(event2).withHeader("orderId", key));
+      }
+
+      // then each wait should complete with its key and stop observing consumers
+      var firstKey = first.get(10, TimeUnit.SECONDS).getKey();
+      var secondKey = second.get(10, TimeUnit.SECONDS).getKey();
+      assertAll(
+          () -> assertThat(firstKey).isEqualTo("order-21"),
+          () -> assertThat(secondKey).isEqualTo("order-22"),
+          () -> assertThat(event1Consumer.getObserverCount()).isEqualTo(0),
+          () -> assertThat(event2Consumer.getObserverCount()).isEqualTo(0)
+      );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void topicProvisioningTest() {
+    // given topic created by client with event published to its last partition
+    var topic = "PROVISIONED_" + UUID.randomUUID();
+    kafkaClient.createTopics(new NewTopic(topic, 3, (short) 1));
+    var description = describeTopic(topic).join();
+    var metadata = kafkaClient.publishEvent(new ProducerRecord<>(topic, 2, null, "{}"));
+
+    // when another client creates the same topic and both delete topics they created
+    boolean existsAfterReuse;
+    try (var otherClient = clientBuilder().build()) {
+      otherClient.createTopics(new NewTopic(topic, 3, (short) 1));
+      otherClient.deleteCreatedTopics();
+      existsAfterReuse = topicExists(topic);
+    }
+    kafkaClient.deleteCreatedTopics();
+    kafkaClient.deleteTopics(topic);
+
+    // then topic should have partition leaders right away and be deleted only by client which created it
+    assertAll(
+        () -> assertThat(description.partitions()).hasSize(3),
+        () -> assertThat(description.partitions().stream().allMatch(partition -> partition.leader() != null))
+            .isTrue(),
+        () -> assertThat(metadata.partition()).isEqualTo(2),
+        () -> assertThat(existsAfterReuse).isTrue(),
+        () -> await().atMost(Duration.ofSeconds(10)).until(() -> !topicExists(topic))
+    );
+  }
+
+  private CompletableFuture<TopicDescription> describeTopic(String topic) {
+    return kafkaClient.getTransport().describeTopics(List.of(topic)).get(topic);
+  }
+
+  private boolean topicExists(String topic) {
+    return describeTopic(topic).handle((description, ex) -> ex == null).join();
+  }
+
+  @Test
+  void watermarkWaitsTest() {
+    // given ready consumer and published event
+    var consumer = kafkaClient.subscribe(Event2.class).awaitReady();
+    var event = new Event2();
+    event.owner = "Watermark";
+    var published = kafkaClient.publish(event);
+
+    // when waits are bounded by offsets instead of timeouts
+    var start = System.nanoTime();
+    var found = consumer.waitForEvent(10, published, e -> e.getContent().owner.equals("Watermark"));
+    consumer.assertNoEvent(10, e -> e.getContent().owner.equals("Missing"));
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    // then they should finish as soon as consumer caught up and fail right away when result is known
+    assertAll(
+        () -> assertThat(found.getContent().owner).isEqualTo("Watermark"),
+        () -> assertThat(elapsed).isLessThan(Duration.ofSeconds(5)),
+        () -> assertThrows(AssertionError.class,
+            () -> consumer.assertNoEvent(10, e -> e.getContent().owner.equals("Watermark"))),
+        () -> assertThrows(AssertionError.class,
+            () -> consumer.waitForEvent(10, published, e -> e.getContent().owner.equals("Missing")))
+    );
+  }
+
+  @Test
+  void serializerPropertiesAreIgnoredTest() {
+    // given client configured with serializers of baseline callers
+    try (var client = clientBuilder()
+        .withConsumerProperty("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer")
+        .withConsumerProperty("value.deserializer", "custom.Deserializer")
+        .withProducerProperty("key.serializer", "org.apache.kafka.common.serialization.StringSerializer")
+        .withProducerProperty("value.serializer", "custom.Serializer")
+        .build()) {
+      var consumer = client.subscribe(Event2.class).awaitReady();
+
+      // when event is published
+      var event = new Event2();
+      event.owner = "Serializers";
+      client.publish(event);
+
+      // then overridden serializers should not be used
+      var consumed = consumer.waitForEvent(5, e -> e.getContent().owner.equals("Serializers"));
+      assertThat(consumed.getContent().owner).isEqualTo("Serializers");
+    }
+  }
+
+  @KafkaEvent(topic = TOPIC, filter = "type")
+  public static class Event1 extends JsonEntity {
+
+    public String type;
+    public Integer number;
+  }
+
+  @KafkaEvent(topic = TOPIC, filter = "owner")
+  public static class Event2 extends JsonEntity {
+
+    public String owner;
+  }
+}
@@ -0,0 +1,82 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+
+public class BoundedEventStoreTest {
+
+  @Test
+  void maxCountPolicyKeepsLastEvents() {
+    // given store keeping 2 events
+    var store = new BoundedEventStore<String>(RetentionPolicy.maxCount(2));
+
+    // when 3 events are added
+    store.add(event(0, "a"));
+    store.add(event(1, "b"));
+    store.add(event(2, "c"));
+
+    // then oldest event should be evicted
+    assertAll(
+        () -> assertThat(contents(store)).containsExactly("b", "c").inOrder(),
+        () -> assertThat(store.getEvictedCount()).isEqualTo(1)
+    );
+  }
+
+  @Test
+  void maxBytesPolicyKeepsEventsWithinSize() {
+    // given store keeping 10 bytes
+    var store = new BoundedEventStore<String>(RetentionPolicy.maxBytes(10));
+
+    // when events of 4 bytes each are added
+    store.add(event(0, "aaaa"));
+    store.add(event(1, "bbbb"));
+    store.add(event(2, "cccc"));
+
+    // then only events fitting in limit should be kept
+    assertAll(
+        () -> assertThat(contents(store)).containsExactly("bbbb", "cccc").inOrder(),
+        () -> assertThat(store.getRetainedBytes()).isEqualTo(8)
+    );
+  }
+
+  @Test
+  void timeToLivePolicyEvictsExpiredEvents() {
+    // given store keeping events for 1 second
+    var now = new AtomicLong(0);
+    var store = new BoundedEventStore<String>(RetentionPolicy.timeToLive(Duration.ofSeconds(1)), now::get);
+
+    // when time passes between added events
+    store.add(event(0, "a"));
+    now.set(800);
+    store.add(event(1, "b"));
+    now.set(1500);
+
+    // then expired event should not be visible
+    assertAll(
+        () -> assertThat(contents(store)).containsExactly("b"),
+        () -> assertThat(store.getEvictedCount()).isEqualTo(1)
+    );
+  }
+
+  private static List<String> contents(BoundedEventStore<String> store) {
+    var contents = new ArrayList<String>();
+    store.forEach(event -> contents.add(event.getContent()));
+    return contents;
+  }
+
+  private static KafkaEventWrapper<String> event(long offset, String content) {
+    var record = new ConsumerRecord<>("topic", 0, offset, 0L, TimestampType.CREATE_TIME, 0, content.length(),
+        (String) null, content, new RecordHeaders(), Optional.empty());
+    return new KafkaEventWrapper<>(record, content);
+  }
+}
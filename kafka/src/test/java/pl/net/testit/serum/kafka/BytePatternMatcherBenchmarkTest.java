@@ -0,0 +1,82 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares {@link KafkaEvent#filter()} check done by decoding record value and calling String.contains with
+ * {@link BytePatternMatcher} search on raw value, for topic where 0.1% of records match filter. Excluded from default
+ * build, run with {@code mvn test -pl kafka -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class BytePatternMatcherBenchmarkTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BytePatternMatcherBenchmarkTest.class);
+
+  private static final int RECORDS = 20_000;
+  private static final int ROUNDS = 30;
+  private static final String FILTER = "\"orderId\":\"ORD-000042\"";
+
+  @Test
+  void bytePathIsFasterThanDecodeAndContains() {
+    var values = generateValues();
+    var matcher = BytePatternMatcher.of(FILTER);
+
+    long stringTime = 0;
+    long bytesTime = 0;
+    long stringMatches = 0;
+    long bytesMatches = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      var start = System.nanoTime();
+      for (byte[] value : values) {
+        if (new String(value, StandardCharsets.UTF_8).contains(FILTER)) {
+          stringMatches++;
+        }
+      }
+      var middle = System.nanoTime();
+      for (byte[] value : values) {
+        if (matcher.matches(value)) {
+          bytesMatches++;
+        }
+      }
+      var end = System.nanoTime();
+
+      // first rounds are JIT warm up
+      if (round >= ROUNDS / 3) {
+        stringTime += middle - start;
+        bytesTime += end - middle;
+      }
+    }
+
+    var measuredRecords = (long) RECORDS * (ROUNDS - ROUNDS / 3);
+    log.info("decode + String.contains: {} ns/record", stringTime / measuredRecords);
+    log.info("BytePatternMatcher:       {} ns/record", bytesTime / measuredRecords);
+    log.info("speedup: {}x", String.format("%.1f", (double) stringTime / bytesTime));
+
+    assertThat(bytesMatches).isEqualTo(stringMatches);
+    assertThat(bytesTime).isLessThan(stringTime);
+  }
+
+  private static List<byte[]> generateValues() {
+    var random = new Random(42);
+    var values = new ArrayList<byte[]>(RECORDS);
+    for (int i = 0; i < RECORDS; i++) {
+      // 0.1% of records match filter
+      var orderId = i % 1000 == 0 ? "ORD-000042" : String.format("ORD-%06d", 100 + random.nextInt(900_000));
+      var value = String.format("{\"type\":\"OrderCreated\",\"orderId\":\"%s\",\"customer\":\"Zażółć %d\","
+              + "\"items\":[{\"sku\":\"SKU-%d\",\"quantity\":%d,\"price\":%d.99}],\"notes\":\"%s\"}",
+          orderId, random.nextInt(), random.nextInt(10_000), random.nextInt(10), random.nextInt(1000),
+          "x".repeat(200 + random.nextInt(600)));
+      values.add(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,41 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class BytePatternMatcherTest {
+
+  @Test
+  void matchesSameValuesAsStringContains() {
+    // given values and patterns
+    var values = new String[]{"", "a", "{\"type\":\"type1\"}", "xxtypxtypetyp", "zażółć gęślą jaźń", "aaaaab",
+        "abc"};
+    var patterns = new String[]{"", "a", "type", "typ", "gęślą", "jaźń", "aab", "abcd", "ż"};
+
+    // when matched on bytes
+    // then result should be the same as String.contains
+    for (String pattern : patterns) {
+      var matcher = BytePatternMatcher.of(pattern);
+      for (String value : values) {
+        assertThat(matcher.matches(value.getBytes(StandardCharsets.UTF_8))).isEqualTo(value.contains(pattern));
+      }
+    }
+  }
+
+  @Test
+  void nullValueMatchesOnlyEmptyPattern() {
+    assertAll(
+        () -> assertThat(BytePatternMatcher.of("").matches(null)).isTrue(),
+        () -> assertThat(BytePatternMatcher.of("type").matches(null)).isFalse()
+    );
+  }
+
+  @Test
+  void indexOfReturnsFirstOccurrence() {
+    var value = "abc-type-type".getBytes(StandardCharsets.UTF_8);
+    assertThat(BytePatternMatcher.of("type").indexOf(value)).isEqualTo(4);
+  }
+}
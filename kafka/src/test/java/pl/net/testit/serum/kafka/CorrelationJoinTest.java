@@ -0,0 +1,71 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+public class CorrelationJoinTest {
+
+  @Test
+  void joinCompletesWithFirstCompleteTuple() {
+    // given join of two sides
+    var join = new CorrelationJoin(2, 100, null);
+
+    // when events of different keys arrive on both sides
+    join.onEvent(0, "order-1", event("orders", "o1"));
+    join.onEvent(0, "order-2", event("orders", "o2"));
+    join.onEvent(1, "order-3", event("payments", "p3"));
+    var completedBeforeMatch = join.getResult().isDone();
+    join.onEvent(1, "order-2", event("payments", "p2"));
+
+    // then join should complete with tuple of the first key present on both sides
+    var tuple = join.getResult().join();
+    assertAll(
+        () -> assertThat(completedBeforeMatch).isFalse(),
+        () -> assertThat(tuple.getKey()).isEqualTo("order-2"),
+        () -> assertThat(tuple.getEvents().get(0).getContent()).isEqualTo("o2"),
+        () -> assertThat(tuple.getEvents().get(1).getContent()).isEqualTo("p2")
+    );
+  }
+
+  @Test
+  void oldestPartialTuplesAreEvicted() {
+    // given join keeping two partial tuples
+    var join = new CorrelationJoin(2, 2, null);
+
+    // when three keys arrive on one side and the oldest key on the other
+    join.onEvent(0, "order-1", event("orders", "o1"));
+    join.onEvent(0, "order-2", event("orders", "o2"));
+    join.onEvent(0, "order-3", event("orders", "o3"));
+    join.onEvent(1, "order-1", event("payments", "p1"));
+
+    // then the oldest key should be forgotten
+    assertAll(
+        () -> assertThat(join.getResult().isDone()).isFalse(),
+        () -> assertThat(join.getEvictedTuplesCount()).isEqualTo(2),
+        () -> assertThat(join.getPartialTuplesCount()).isEqualTo(2)
+    );
+  }
+
+  @Test
+  void joinWithExpectedKeyIgnoresOtherKeys() {
+    // given join waiting for single key
+    var join = new CorrelationJoin(2, 100, "order-2");
+
+    // when both sides receive events of other key
+    join.onEvent(0, "order-1", event("orders", "o1"));
+    join.onEvent(1, "order-1", event("payments", "p1"));
+
+    // then join should not complete nor keep them
+    assertAll(
+        () -> assertThat(join.getResult().isDone()).isFalse(),
+        () -> assertThat(join.getPartialTuplesCount()).isEqualTo(0)
+    );
+  }
+
+  private static KafkaEventWrapper<String> event(String topic, String content) {
+    return new KafkaEventWrapper<>(new ConsumerRecord<>(topic, 0, 0, null, content), content);
+  }
+}
@@ -0,0 +1,86 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+public class EventIndexTest {
+
+  @Test
+  void retainedEventsAreFoundByKey() {
+    // given index with events of two keys
+    var index = EventIndex.<String>byKey();
+    index.add(event(0, "order-1", "a"), 0, 0);
+    index.add(event(1, "order-2", "b"), 1, 0);
+    index.add(event(2, "order-1", "c"), 2, 0);
+
+    // when events are looked up after first event was evicted from store
+    var allOrder1 = index.find("order-1", 0);
+    var retainedOrder1 = index.find("order-1", 1);
+
+    // then only retained events with the key should be found
+    assertAll(
+        () -> assertThat(allOrder1).hasSize(2),
+        () -> assertThat(retainedOrder1).hasSize(1),
+        () -> assertThat(retainedOrder1.get(0).getContent()).isEqualTo("c"),
+        () -> assertThat(index.find("order-3", 0)).isEmpty()
+    );
+  }
+
+  @Test
+  void waiterReceivesOnlyEventsWithItsHeaderValue() {
+    // given waiter registered for header value
+    var index = EventIndex.<String>byHeader("correlationId");
+    var waiter = index.register("c-2", e -> e.getContent().startsWith("x"), 1, 0);
+
+    // when events with different header values are ingested
+    index.add(eventWithHeader(0, "c-1", "x1"), 0, 0);
+    index.add(eventWithHeader(1, "c-2", "y1"), 1, 0);
+    var completedBeforeMatch = waiter.getResult().isDone();
+    index.add(eventWithHeader(2, "c-2", "x2"), 2, 0);
+
+    // then waiter should complete with matching event of its header value
+    assertAll(
+        () -> assertThat(completedBeforeMatch).isFalse(),
+        () -> assertThat(waiter.getResult().join().get(0).getContent()).isEqualTo("x2")
+    );
+  }
+
+  @Test
+  void waiterIsCompletedByRetainedEvent() {
+    // given index with retained event
+    var index = EventIndex.<String>byKey();
+    index.add(event(0, "order-1", "a"), 0, 0);
+
+    // when waiter is registered for its key
+    var waiter = index.register("order-1", e -> true, 1, 0);
+
+    // then waiter should complete immediately
+    assertThat(waiter.getResult().isDone()).isTrue();
+  }
+
+  @Test
+  void evictedEventsArePrunedWhenIndexGrows() {
+    // given index with more events than prune threshold, of which only the last 10 are retained
+    var index = EventIndex.<String>byKey();
+    for (int i = 0; i < 1024; i++) {
+      index.add(event(i, "key-" + i, "e" + i), i, Math.max(0, i - 9));
+    }
+
+    // then evicted events should be removed from index
+    assertThat(index.getIndexedCount()).isEqualTo(10);
+  }
+
+  private static KafkaEventWrapper<String> event(long offset, String key, String content) {
+    return new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, offset, key, content), content);
+  }
+
+  private static KafkaEventWrapper<String> eventWithHeader(long offset, String correlationId, String content) {
+    var record = new ConsumerRecord<String, String>("topic", 0, offset, null, content);
+    record.headers().add("correlationId", correlationId.getBytes(StandardCharsets.UTF_8));
+    return new KafkaEventWrapper<>(record, content);
+  }
+}
@@ -0,0 +1,83 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+public class EventMatcherRegistryTest {
+
+  @Test
+  void waiterCompletesWhenExpectedCountIsMatched() {
+    // given registry with one buffered matching event
+    var registry = new EventMatcherRegistry<String>();
+    var waiter = registry.register(e -> e.getContent().startsWith("a"), 2, true,
+        List.of(event(0, "a1"), event(1, "b1")));
+
+    // when new events are ingested
+    registry.onEvent(event(2, "b2"));
+    var completedBeforeSecondMatch = waiter.getResult().isDone();
+    registry.onEvent(event(3, "a2"));
+
+    // then waiter should complete on second match and be removed from registry
+    assertAll(
+        () -> assertThat(completedBeforeSecondMatch).isFalse(),
+        () -> assertThat(waiter.getResult().join()).hasSize(2),
+        () -> assertThat(waiter.getResult().join().get(1).getContent()).isEqualTo("a2"),
+        () -> assertThat(registry.size()).isEqualTo(0)
+    );
+  }
+
+  @Test
+  void waiterSatisfiedByBufferedEventsIsNotRegistered() {
+    // given registry
+    var registry = new EventMatcherRegistry<String>();
+
+    // when waiter is satisfied by already buffered events
+    var waiter = registry.register(e -> true, 1, true, List.of(event(0, "a1")));
+
+    // then it should be completed immediately
+    assertAll(
+        () -> assertThat(waiter.getResult().isDone()).isTrue(),
+        () -> assertThat(registry.size()).isEqualTo(0)
+    );
+  }
+
+  @Test
+  void exactWaiterDoesNotCompleteWhenMoreBufferedEventsMatch() {
+    // given registry
+    var registry = new EventMatcherRegistry<String>();
+
+    // when waiters expecting one event are registered with two matching buffered events
+    var exactWaiter = registry.register(e -> true, 1, true, List.of(event(0, "a1"), event(1, "a2")));
+    var firstMatchWaiter = registry.register(e -> true, 1, false, List.of(event(0, "a1"), event(1, "a2")));
+    registry.onEvent(event(2, "a3"));
+
+    // then only waiter accepting the first match should complete
+    assertAll(
+        () -> assertThat(exactWaiter.getResult().isDone()).isFalse(),
+        () -> assertThat(exactWaiter.getMatchedCount()).isEqualTo(2),
+        () -> assertThat(firstMatchWaiter.getResult().join().get(0).getContent()).isEqualTo("a1"),
+        () -> assertThat(registry.size()).isEqualTo(0)
+    );
+  }
+
+  @Test
+  void predicateExceptionCompletesWaiterExceptionally() {
+    // given registered waiter with failing predicate
+    var registry = new EventMatcherRegistry<String>();
+    var waiter = registry.register(e -> e.getContent().isEmpty(), 1, true, List.of());
+
+    // when event without content is ingested
+    registry.onEvent(event(0, null));
+
+    // then waiter should fail
+    assertThat(waiter.getResult().isCompletedExceptionally()).isTrue();
+  }
+
+  private static KafkaEventWrapper<String> event(long offset, String content) {
+    return new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, offset, null, content), content);
+  }
+}
@@ -0,0 +1,151 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+public class EventPublisherTest {
+
+  private final TopicPoller poller = new TopicPoller(null, null, "group", "topic", new Properties(),
+      new ConsumerOptions(), new PublishedRecords());
+
+  @Test
+  void partitionIsPausedWhenSubscriberFallsBehind() {
+    // given subscriber requesting one event and publisher buffering four events
+    var publisher = new EventPublisher<String>(poller, 4);
+    var subscriber = new RecordingSubscriber(1);
+    publisher.subscribe(subscriber);
+
+    // when more events than buffer size are published on partition 1
+    for (int offset = 0; offset < 6; offset++) {
+      publisher.onEvent(event(1, offset));
+    }
+    publisher.onEvent(event(2, 0));
+
+    // then only requested event should be delivered and partition 1 paused
+    assertAll(
+        () -> assertThat(subscriber.received).hasSize(1),
+        () -> assertThat(poller.isPauseRequested(1)).isTrue(),
+        () -> assertThat(poller.isPauseRequested(2)).isTrue(),
+        () -> assertThat(poller.isPauseRequested(0)).isFalse()
+    );
+  }
+
+  @Test
+  void partitionIsResumedWhenSubscriberCatchesUp() {
+    // given paused partition
+    var publisher = new EventPublisher<String>(poller, 4);
+    var subscriber = new RecordingSubscriber(0);
+    publisher.subscribe(subscriber);
+    for (int offset = 0; offset < 6; offset++) {
+      publisher.onEvent(event(1, offset));
+    }
+    var pausedBeforeRequest = poller.isPauseRequested(1);
+
+    // when subscriber requests all buffered events
+    subscriber.subscription.request(Long.MAX_VALUE);
+
+    // then events should be delivered in order and partition resumed
+    assertAll(
+        () -> assertThat(pausedBeforeRequest).isTrue(),
+        () -> assertThat(subscriber.received).containsExactly("1-0", "1-1", "1-2", "1-3", "1-4", "1-5").inOrder(),
+        () -> assertThat(poller.isPauseRequested(1)).isFalse()
+    );
+  }
+
+  @Test
+  void subscriberIsCompletedAfterBufferedEvents() {
+    // given subscriber with one buffered event
+    var publisher = new EventPublisher<String>(poller, 4);
+    var subscriber = new RecordingSubscriber(0);
+    publisher.subscribe(subscriber);
+    publisher.onEvent(event(0, 0));
+
+    // when publisher completes and subscriber requests events
+    publisher.complete();
+    var completedBeforeRequest = subscriber.completed;
+    subscriber.subscription.request(1);
+
+    // then subscriber should receive buffered event and completion
+    assertAll(
+        () -> assertThat(completedBeforeRequest).isFalse(),
+        () -> assertThat(subscriber.received).containsExactly("0-0"),
+        () -> assertThat(subscriber.completed).isTrue(),
+        () -> assertThat(publisher.getSubscriberCount()).isEqualTo(0)
+    );
+  }
+
+  @Test
+  void publisherIsTerminatedWhenLastSubscriptionIsCancelled() {
+    // given publisher with two subscribers
+    var publisher = new EventPublisher<String>(poller, 4);
+    var terminations = new AtomicInteger();
+    publisher.whenTerminated(terminations::incrementAndGet);
+    var first = new RecordingSubscriber(1);
+    var second = new RecordingSubscriber(1);
+    publisher.subscribe(first);
+    publisher.subscribe(second);
+
+    // when both cancel and another subscriber subscribes
+    first.subscription.cancel();
+    var terminationsAfterFirstCancel = terminations.get();
+    second.subscription.cancel();
+    var late = new RecordingSubscriber(1);
+    publisher.subscribe(late);
+    publisher.complete();
+
+    // then publisher should be terminated once and late subscriber completed right away
+    assertAll(
+        () -> assertThat(terminationsAfterFirstCancel).isEqualTo(0),
+        () -> assertThat(terminations.get()).isEqualTo(1),
+        () -> assertThat(late.completed).isTrue(),
+        () -> assertThat(publisher.getSubscriberCount()).isEqualTo(0)
+    );
+  }
+
+  private static KafkaEventWrapper<String> event(int partition, long offset) {
+    var content = partition + "-" + offset;
+    return new KafkaEventWrapper<>(new ConsumerRecord<>("topic", partition, offset, null, content), content);
+  }
+
+  private static class RecordingSubscriber implements Flow.Subscriber<KafkaEventWrapper<String>> {
+
+    private final long initialRequest;
+    private final List<String> received = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private boolean completed;
+
+    private RecordingSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (initialRequest > 0) {
+        subscription.request(initialRequest);
+      }
+    }
+
+    @Override
+    public void onNext(KafkaEventWrapper<String> item) {
+      received.add(item.getContent());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
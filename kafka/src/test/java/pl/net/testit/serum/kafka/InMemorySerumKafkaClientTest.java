@@ -0,0 +1,464 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.net.testit.serum.commons.json.JsonEntity;
+
+public class InMemorySerumKafkaClientTest extends AbstractSerumKafkaClientTest {
+
+  private static final String PARTITIONED_TOPIC = "PARTITIONED_TOPIC";
+  private static final String SHARED_TOPIC = "SHARED_TOPIC";
+  private static final String LOOK_BACK_TOPIC = "LOOK_BACK_TOPIC";
+  private static final String CLEANUP_TOPIC = "CLEANUP_TOPIC";
+  private static final String WORKERS_TOPIC = "WORKERS_TOPIC";
+  private static final String DELETED_TOPIC = "DELETED_TOPIC";
+  private static final String LAGGING_TOPIC = "LAGGING_TOPIC";
+  private static final String LOAD_TOPIC = "LOAD_TOPIC";
+  private static final String STOPPING_TOPIC = "STOPPING_TOPIC";
+  private static final InMemoryKafkaTransport transport = new InMemoryKafkaTransport().createTopic(TOPIC, 5);
+
+  @Override
+  protected SerumKafkaClientBuilder clientBuilder() {
+    return SerumKafkaClient.builder(transport);
+  }
+
+  @Test
+  void manualAssignmentPicksUpNewPartitionsTest() {
+    transport.createTopic(PARTITIONED_TOPIC, 1);
+    try (var client = clientBuilder().withManualAssignment(Duration.ofMillis(100)).build()) {
+      // given consumer of topic with single partition
+      var consumer = client.subscribe(PartitionedEvent.class).awaitReady();
+
+      // when partitions are added and event is published to new partition
+      transport.createPartitions(PARTITIONED_TOPIC, 3);
+      client.publishEvent(new ProducerRecord<>(PARTITIONED_TOPIC, 2, "key", "{\"name\":\"new partition\"}"));
+
+      // then event should be consumed
+      var event = consumer.waitForEvent(5, e -> true);
+      assertThat(event.getConsumerRecord().partition()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void unsubscribedConsumerIsNotReportedTest() {
+    try (var client = clientBuilder().build()) {
+      // given two consumers of the client
+      var consumer = client.subscribe(Event1.class).awaitReady();
+      client.subscribe(Event2.class).awaitReady();
+
+      // when one of them unsubscribes
+      consumer.unsubscribe();
+
+      // then only subscribed consumer should be reported
+      assertAll(
+          () -> assertThat(client.getMetrics().getConsumers()).hasSize(1),
+          () -> assertThat(client.getLatencyReport()).doesNotContain("Event1")
+      );
+    }
+  }
+
+  @Test
+  void loadGeneratorConsumesEventsNotMatchingClassFiltersTest() {
+    transport.createTopic(LOAD_TOPIC, 1);
+    try (var client = clientBuilder().build()) {
+      // given load generator whose events do not match where condition of event class
+      var generator = KafkaLoadGenerator.of(client, FilteredLoadEvent.class, sequence -> {
+        var event = new FilteredLoadEvent();
+        event.kind = "other";
+        return event;
+      }).withRate(20).withDuration(Duration.ofMillis(500)).withDrainTimeout(Duration.ofSeconds(30));
+
+      // when load is generated
+      var startNanos = System.nanoTime();
+      var summary = generator.run();
+      var elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+      // then events should be consumed back without waiting for drain timeout and consumer removed from client
+      assertAll(
+          () -> assertThat(summary.getReceived()).isEqualTo(10),
+          () -> assertThat(elapsed).isLessThan(Duration.ofSeconds(10)),
+          () -> assertThat(client.getMetrics().getConsumers()).isEmpty()
+      );
+    }
+  }
+
+  @Test
+  void consumerUnsubscribedByItsListenerTest() throws Exception {
+    transport.createTopic(STOPPING_TOPIC, 2);
+    try (var client = clientBuilder().build();
+        var workersClient = clientBuilder().withPartitionWorkers(2).build()) {
+      // when consumers unsubscribe from listeners run by poll thread and by partition worker
+      var pollThreadElapsed = unsubscribeFromListener(client);
+      var workerElapsed = unsubscribeFromListener(workersClient);
+
+      // then unsubscribe should not wait for poll loop running the listener
+      assertAll(
+          () -> assertThat(pollThreadElapsed).isLessThan(Duration.ofSeconds(5)),
+          () -> assertThat(workerElapsed).isLessThan(Duration.ofSeconds(5)),
+          () -> assertThat(client.getMetrics().getConsumers()).isEmpty(),
+          () -> assertThat(workersClient.getMetrics().getConsumers()).isEmpty()
+      );
+
+      // and topic can be subscribed again once poll loop exited
+      var consumer = client.subscribe(StoppingEvent.class).awaitReady();
+      client.publishEvent(STOPPING_TOPIC, "{\"name\":\"again\"}");
+      consumer.waitForEvent(5, e -> e.getContent().name.equals("again"));
+    }
+  }
+
+  private static Duration unsubscribeFromListener(SerumKafkaClient client) throws Exception {
+    var consumer = client.subscribe(StoppingEvent.class).awaitReady();
+    var unsubscribed = new CompletableFuture<Duration>();
+    consumer.addEventListener(event -> {
+      var startNanos = System.nanoTime();
+      consumer.unsubscribe();
+      unsubscribed.complete(Duration.ofNanos(System.nanoTime() - startNanos));
+    });
+    client.publishEvent(STOPPING_TOPIC, "{\"name\":\"stop\"}");
+    return unsubscribed.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void recordsPublishedBeforeSubscriptionAreOlderTest() {
+    // given records published in the same millisecond
+    var clockTransport = new InMemoryKafkaTransport();
+    var publishedBefore = new ArrayList<Long>();
+    for (int i = 0; i < 100; i++) {
+      publishedBefore.add(clockTransport.append(new ProducerRecord<>(TOPIC, null, new byte[0])).timestamp());
+    }
+
+    // when consumer subscription time is taken and another record is published
+    var subscribedAt = clockTransport.currentTimeMillis();
+    var publishedAfter = clockTransport.append(new ProducerRecord<>(TOPIC, null, new byte[0])).timestamp();
+
+    // then only record published after subscription should not be older than subscription
+    assertAll(
+        () -> assertThat(publishedBefore).isInOrder(),
+        () -> assertThat(Collections.max(publishedBefore)).isLessThan(subscribedAt),
+        () -> assertThat(publishedAfter).isAtLeast(subscribedAt)
+    );
+  }
+
+  @Test
+  void consumersOfTopicSharePollerTest() {
+    var consumersCreated = new AtomicInteger();
+    var countingTransport = new InMemoryKafkaTransport() {
+      @Override
+      public Consumer<String, byte[]> createConsumer(Properties properties) {
+        consumersCreated.incrementAndGet();
+        return super.createConsumer(properties);
+      }
+    };
+    countingTransport.createTopic(SHARED_TOPIC, 1);
+    try (var client = SerumKafkaClient.builder(countingTransport).build()) {
+      // given two consumers of the same topic
+      var consumer1 = client.subscribe(SharedEvent.class).awaitReady();
+      var consumer2 = client.subscribe(SharedEvent.class);
+      client.publishEvent(SHARED_TOPIC, "{\"name\":\"first\"}");
+      consumer1.waitForEvent(5, e -> e.getContent().name.equals("first"));
+
+      // when one of them unsubscribes and another consumer subscribes
+      consumer1.unsubscribe();
+      var consumer3 = client.subscribe(SharedEvent.class);
+      var consumer3Ready = consumer3.isReady();
+      client.publishEvent(SHARED_TOPIC, "{\"name\":\"second\"}");
+
+      // then events should be fanned out from single kafka consumer which was neither recreated nor resubscribed
+      assertAll(
+          () -> assertThat(consumer2.waitForEvent(5, e -> e.getContent().name.equals("first"))).isNotNull(),
+          () -> assertThat(consumer2.waitForEvent(5, e -> e.getContent().name.equals("second"))).isNotNull(),
+          () -> assertThat(consumer3.waitForEvent(5, e -> e.getContent().name.equals("second"))).isNotNull(),
+          () -> assertThat(consumer1.getMetrics().getRecordsStored()).isEqualTo(1),
+          () -> assertThat(consumer3Ready).isTrue(),
+          () -> assertThat(consumer3.getConsumerGroupId()).isEqualTo(consumer2.getConsumerGroupId()),
+          () -> assertThat(consumersCreated.get()).isEqualTo(1)
+      );
+    }
+  }
+
+  @Test
+  void subscribeDuringConsumerGroupDeletionTest() {
+    var deletion = new CompletableFuture<Void>();
+    var slowTransport = new InMemoryKafkaTransport() {
+      @Override
+      public Map<String, CompletableFuture<Void>> deleteConsumerGroups(Collection<String> groupIds) {
+        return groupIds.stream().collect(Collectors.toMap(groupId -> groupId, groupId -> deletion));
+      }
+    };
+    slowTransport.createTopic(CLEANUP_TOPIC, 1);
+    try (var client = SerumKafkaClient.builder(slowTransport).build()) {
+      // given consumer group of unsubscribed consumer being deleted
+      var consumer1 = client.subscribe(CleanupEvent.class).awaitReady();
+      consumer1.unsubscribe();
+      var cleanup = client.deleteEmptyConsumerGroupsAsync();
+
+      // when topic is subscribed again before deletion completes
+      var consumer2 = client.subscribe(CleanupEvent.class).awaitReady();
+      deletion.complete(null);
+      client.publishEvent(CLEANUP_TOPIC, "{\"name\":\"after cleanup\"}");
+
+      // then new consumer should get fresh poller which is not removed by the cleanup
+      assertAll(
+          () -> assertThat(cleanup.join().getGroupsDeleted()).isEqualTo(1),
+          () -> assertThat(consumer2.getConsumerGroupId()).isNotEqualTo(consumer1.getConsumerGroupId()),
+          () -> assertThat(consumer2.waitForEvent(5, e -> e.getContent().name.equals("after cleanup"))).isNotNull(),
+          () -> assertThat(client.deleteEmptyConsumerGroupsAsync().join().getGroupsDeleted()).isEqualTo(0)
+      );
+    }
+  }
+
+  @Test
+  void startOffsetLookBackTest() {
+    // given record published 30 seconds before subscription
+    var oldTimestamp = System.currentTimeMillis() - 30000;
+    try (var client = clientBuilder().withStartOffsetLookBack(Duration.ZERO).build();
+        var lookBackClient = clientBuilder().withStartOffsetLookBack(Duration.ofMinutes(1)).build()) {
+      client.publishEvent(new ProducerRecord<>(LOOK_BACK_TOPIC, null, oldTimestamp, "old", "{\"name\":\"old\"}"));
+
+      // when clients with different look back subscribe topic and new record is published
+      var consumer = client.subscribe(LookBackEvent.class).awaitReady();
+      var lookBackConsumer = lookBackClient.subscribe(LookBackEvent.class).awaitReady();
+      client.publishEvent(LOOK_BACK_TOPIC, "{\"name\":\"new\"}");
+      consumer.waitForEvent(5, e -> e.getContent().name.equals("new"));
+      lookBackConsumer.waitForEvent(5, e -> e.getContent().name.equals("new"));
+
+      // then only poller looking back should fetch and filter out the old record
+      assertAll(
+          () -> assertThat(consumer.getMetrics().getRecordsPolled()).isEqualTo(1),
+          () -> assertThat(consumer.getMetrics().getRecordsFiltered()).isEqualTo(0),
+          () -> assertThat(lookBackConsumer.getMetrics().getRecordsPolled()).isEqualTo(2),
+          () -> assertThat(lookBackConsumer.getMetrics().getRecordsFiltered()).isEqualTo(1),
+          () -> assertThat(lookBackConsumer.getRetainedEventsCount()).isEqualTo(1)
+      );
+    }
+  }
+
+  @Test
+  void partitionWorkersKeepPartitionOrderTest() throws Exception {
+    transport.createTopic(WORKERS_TOPIC, 3);
+    var executor = Executors.newFixedThreadPool(4);
+    try (var client = clientBuilder().withExecutor(executor).withPartitionWorkers(2, 1).build()) {
+      // given consumer processing records of three partitions on two workers with single record queues
+      var consumer = client.subscribe(WorkerEvent.class).awaitReady();
+
+      // when events are published to all partitions and consumer unsubscribes after receiving them
+      for (int i = 0; i < 30; i++) {
+        client.publishEvent(new ProducerRecord<>(WORKERS_TOPIC, i % 3, "key", "{\"name\":\"" + i + "\"}"));
+      }
+      var events = consumer.waitForEvents(5, 30, e -> true);
+      consumer.unsubscribe();
+      executor.shutdown();
+
+      // then events of every partition should be stored in offset order and workers should be drained and stopped
+      var offsetsByPartition = events.stream().collect(Collectors.groupingBy(e -> e.getConsumerRecord().partition(),
+          Collectors.mapping(e -> e.getConsumerRecord().offset(), Collectors.toList())));
+      assertAll(
+          () -> assertThat(offsetsByPartition.keySet()).containsExactly(0, 1, 2),
+          () -> offsetsByPartition.values().forEach(offsets -> assertThat(offsets).isInStrictOrder()),
+          () -> assertThat(consumer.getMetrics().getRecordsStored()).isEqualTo(30),
+          () -> assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue()
+      );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void deletedTopicIsNotRecreatedByConsumerTest() {
+    try (var client = clientBuilder().build()) {
+      // given consumer of topic with several partitions
+      client.createTopics(new NewTopic(DELETED_TOPIC, 3, (short) 1));
+      var consumer = client.subscribe(DeletedEvent.class).awaitReady();
+
+      // when topic is deleted while consumer polls it
+      client.deleteTopics(DELETED_TOPIC);
+      consumer.assertNoEvent(1, e -> true);
+
+      // then topic should stay deleted until it is published to
+      var endOffsetsAfterPolling = transport.getEndOffsets(DELETED_TOPIC);
+      client.publishEvent(DELETED_TOPIC, "{\"name\":\"recreated\"}");
+      assertAll(
+          () -> assertThat(endOffsetsAfterPolling).isEmpty(),
+          () -> assertThat(transport.getEndOffsets(DELETED_TOPIC)).containsExactly(0, 1L)
+      );
+    }
+  }
+
+  @Test
+  void absenceIsNotAssertedWhenConsumerDoesNotCatchUpTest() {
+    transport.createTopic(LAGGING_TOPIC, 1);
+    try (var client = clientBuilder().build()) {
+      // given consumer whose publisher subscriber never requests events, so partition gets paused
+      var consumer = client.subscribe(LaggingEvent.class).awaitReady();
+      consumer.publisher(1).subscribe(new Flow.Subscriber<>() {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+        }
+
+        @Override
+        public void onNext(KafkaEventWrapper<LaggingEvent> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+      });
+      client.publishEvent(LAGGING_TOPIC, "{\"name\":\"first\"}");
+      client.publishEvent(LAGGING_TOPIC, "{\"name\":\"second\"}");
+      consumer.waitForEvent(5, e -> e.getContent().name.equals("first"));
+
+      // when event is published to paused partition
+      client.publishEvent(LAGGING_TOPIC, "{\"name\":\"third\"}");
+
+      // then absence of event should not be asserted
+      var error = assertThrows(AssertionError.class, () -> consumer.assertNoEvent(1, e -> false));
+      assertThat(error).hasMessageThat().contains("did not catch up");
+    }
+  }
+
+  @Test
+  void latencyOfEventsPublishedByClientTest(@TempDir Path spillDirectory) {
+    try (var client = clientBuilder().build();
+        var spillingClient = clientBuilder().withEventSpillDirectory(spillDirectory).build()) {
+      // given consumers keeping events in memory and in spill files
+      var consumer = client.subscribe(Event2.class).awaitReady();
+      var spillingConsumer = spillingClient.subscribe(Event2.class).awaitReady();
+
+      // when each client publishes event, which in-memory producer appends before acknowledging it
+      var event = new Event2();
+      event.owner = "Latency";
+      client.publish(event, "latency-1");
+      spillingClient.publish(event, "latency-2");
+      var consumed = consumer.waitForEventByKey(5, "latency-1");
+      var spilled = spillingConsumer.waitForEventByKey(5, "latency-2");
+
+      // then publish times and latencies should be recorded for both of them
+      assertAll(
+          () -> assertThat(consumed.getPublishedAt().isPresent()).isTrue(),
+          () -> assertThat(spilled.getPublishedAt().isPresent()).isTrue(),
+          () -> assertThat(consumer.getLatencyStats(LatencyType.PRODUCE_TO_BROKER).getCount()).isEqualTo(1),
+          () -> assertThat(consumer.getLatencyStats(LatencyType.PUBLISH_TO_MATCH).getCount()).isEqualTo(1),
+          () -> assertThat(spillingConsumer.getLatencyStats(LatencyType.PRODUCE_TO_BROKER).getCount()).isEqualTo(1),
+          () -> assertThat(spillingConsumer.getLatencyStats(LatencyType.PUBLISH_TO_MATCH).getCount()).isEqualTo(1)
+      );
+    }
+  }
+
+  @Test
+  void groupCleanupOfClosedClientFailsTest() {
+    // given closed client
+    var client = clientBuilder().build();
+    client.close();
+
+    // when consumer groups are deleted
+    // then cleanup should fail and unsubscribing all topics should not
+    assertAll(
+        () -> assertThrows(KafkaClientException.class, client::deleteEmptyConsumerGroupsAsync),
+        () -> assertThrows(KafkaClientException.class, client::deleteEmptyConsumerGroups),
+        client::unsubscribeAllTopics
+    );
+  }
+
+  @Test
+  void invalidConsumerTimingsAreRejectedTest() {
+    var builder = clientBuilder();
+    assertAll(
+        () -> assertThrows(NullPointerException.class, () -> builder.withReadinessTimeout(null)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.withReadinessTimeout(Duration.ZERO)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.withReadinessTimeout(Duration.ofSeconds(-1))),
+        () -> assertThrows(NullPointerException.class, () -> builder.withStartOffsetLookBack(null)),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> builder.withStartOffsetLookBack(Duration.ofMillis(-1))),
+        () -> assertThat(builder.withStartOffsetLookBack(Duration.ZERO)).isSameInstanceAs(builder)
+    );
+  }
+
+  @Test
+  void invalidPartitionRefreshIntervalIsRejectedTest() {
+    var builder = clientBuilder();
+    assertAll(
+        () -> assertThrows(NullPointerException.class, () -> builder.withManualAssignment(null)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.withManualAssignment(Duration.ZERO)),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> builder.withManualAssignment(Duration.ofMillis(-100)))
+    );
+  }
+
+  @KafkaEvent(topic = LOOK_BACK_TOPIC)
+  public static class LookBackEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = SHARED_TOPIC)
+  public static class SharedEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = CLEANUP_TOPIC)
+  public static class CleanupEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = WORKERS_TOPIC)
+  public static class WorkerEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = DELETED_TOPIC)
+  public static class DeletedEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = LAGGING_TOPIC)
+  public static class LaggingEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = LOAD_TOPIC, where = "$.kind == \"matching\"")
+  public static class FilteredLoadEvent extends JsonEntity {
+
+    public String kind;
+  }
+
+  @KafkaEvent(topic = STOPPING_TOPIC)
+  public static class StoppingEvent extends JsonEntity {
+
+    public String name;
+  }
+
+  @KafkaEvent(topic = PARTITIONED_TOPIC)
+  public static class PartitionedEvent extends JsonEntity {
+
+    public String name;
+  }
+}
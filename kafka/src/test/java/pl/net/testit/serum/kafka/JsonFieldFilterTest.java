@@ -0,0 +1,85 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class JsonFieldFilterTest {
+
+  private static final String ORDER = "{'orderId':'ORD-1','type':'CREATED','total':12.50,'paid':false,"
+      + "'customer':{'name':'Dog','address':{'city':'Cracow'}},'items':[{'orderId':'ORD-2'}],'note':null}";
+
+  @Test
+  void conditionsAreEvaluatedOnFieldValues() {
+    assertAll(
+        () -> assertThat(matches("$.orderId == 'ORD-1'")).isTrue(),
+        () -> assertThat(matches("$.orderId == 'ORD-2'")).isFalse(),
+        () -> assertThat(matches("$.orderId != 'ORD-2'")).isTrue(),
+        () -> assertThat(matches("$.type in ['UPDATED', 'CREATED']")).isTrue(),
+        () -> assertThat(matches("$.type in ['UPDATED']")).isFalse(),
+        () -> assertThat(matches("$.total == 12.5")).isTrue(),
+        () -> assertThat(matches("$.paid == false")).isTrue(),
+        () -> assertThat(matches("$.note == null")).isTrue(),
+        () -> assertThat(matches("$.customer.address.city == 'Cracow'")).isTrue(),
+        () -> assertThat(matches("$.customer == 'Dog'")).isFalse(),
+        () -> assertThat(matches("$.missing == null")).isTrue(),
+        () -> assertThat(matches("$.missing == 'x'")).isFalse(),
+        () -> assertThat(matches("$.orderId == 'ORD-1'", "$.customer.name == 'Dog'")).isTrue(),
+        () -> assertThat(matches("$.orderId == 'ORD-1'", "$.customer.name == 'Cat'")).isFalse()
+    );
+  }
+
+  @Test
+  void fieldWithSameNameInOtherObjectDoesNotMatch() {
+    // given substring filter would match ORD-2 nested in items
+    // then field condition should check only top level orderId
+    assertThat(matches("$.orderId == 'ORD-2'")).isFalse();
+  }
+
+  @Test
+  void invalidJsonDoesNotMatch() {
+    var filter = JsonFieldFilter.compile("$.type == \"A\"");
+    assertAll(
+        () -> assertThat(filter.matches("not json".getBytes(StandardCharsets.UTF_8))).isFalse(),
+        () -> assertThat(filter.matches("[1,2]".getBytes(StandardCharsets.UTF_8))).isFalse()
+    );
+  }
+
+  @Test
+  void invalidConditionIsRejected() {
+    assertAll(
+        () -> assertThrows(KafkaClientException.class, () -> JsonFieldFilter.compile("orderId == 1")),
+        () -> assertThrows(KafkaClientException.class, () -> JsonFieldFilter.compile("$.type in \"A\"")),
+        () -> assertThrows(KafkaClientException.class, () -> JsonFieldFilter.compile("$.type == {\"a\":1}"))
+    );
+  }
+
+  @Test
+  void filterIsCompiledFromEventClassAnnotation() {
+    var filter = JsonFieldFilter.forEventClass(OrderCreated.class);
+    assertAll(
+        () -> assertThat(filter).isSameInstanceAs(JsonFieldFilter.forEventClass(OrderCreated.class)),
+        () -> assertThat(filter.matches(json(ORDER))).isTrue()
+    );
+  }
+
+  @KafkaEvent(topic = "orders", where = {"$.type == \"CREATED\"", "$.customer.name in [\"Dog\", \"Cat\"]"})
+  public static class OrderCreated {
+
+  }
+
+  private static boolean matches(String... conditions) {
+    var expressions = new String[conditions.length];
+    for (int i = 0; i < conditions.length; i++) {
+      expressions[i] = conditions[i].replace("'", "\"");
+    }
+    return JsonFieldFilter.compile(expressions).matches(json(ORDER));
+  }
+
+  private static byte[] json(String value) {
+    return value.replace("'", "\"").getBytes(StandardCharsets.UTF_8);
+  }
+}
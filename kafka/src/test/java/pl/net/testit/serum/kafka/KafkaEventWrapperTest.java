@@ -0,0 +1,74 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import pl.net.testit.serum.commons.json.JsonParser;
+
+public class KafkaEventWrapperTest {
+
+  @Test
+  void contentIsDeserializedOnceOnFirstAccess() {
+    // given lazy event wrapper
+    var counter = new DeserializationCounter();
+    var calls = new AtomicInteger();
+    var event = new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, 0, "key", "{\"owner\":\"Dog\"}"),
+        value -> {
+          calls.incrementAndGet();
+          return JsonParser.fromJSON(value, Event.class);
+        }, counter);
+    counter.recordIngested();
+
+    // when only metadata is accessed
+    var key = event.getKey();
+    var loadedAfterKeyAccess = event.isContentLoaded();
+
+    // and content is accessed twice
+    var owner = event.getContent().owner;
+    event.getContent();
+
+    // then content should be deserialized once
+    assertAll(
+        () -> assertThat(key).isEqualTo("key"),
+        () -> assertThat(loadedAfterKeyAccess).isFalse(),
+        () -> assertThat(owner).isEqualTo("Dog"),
+        () -> assertThat(calls.get()).isEqualTo(1),
+        () -> assertThat(counter.getStats().getPerformed()).isEqualTo(1)
+    );
+  }
+
+  @Test
+  void deserializationFailureIsCountedAndDoesNotMatchWaiter() {
+    // given lazy event wrapper of invalid json
+    var counter = new DeserializationCounter();
+    var event = new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, 0, "key", "not json"),
+        value -> JsonParser.fromJSON(value, Event.class), counter);
+    var skipped = new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, 1, "key", "not json"),
+        value -> JsonParser.fromJSON(value, Event.class), counter);
+    counter.recordIngested();
+    counter.recordIngested();
+
+    // when waiter checking content is offered this event
+    var registry = new EventMatcherRegistry<Event>();
+    var waiter = registry.register(e -> e.getContent().owner != null, 1, true, List.of(event));
+
+    // then event should not match and failure should be counted
+    assertAll(
+        () -> assertThat(waiter.getResult().isDone()).isFalse(),
+        () -> assertThrows(EventDeserializationException.class, event::getContent),
+        () -> assertThat(skipped.isContentLoaded()).isFalse(),
+        () -> assertThat(counter.getStats().getFailed()).isEqualTo(1),
+        () -> assertThat(counter.getStats().getSkipped()).isEqualTo(1)
+    );
+  }
+
+  public static class Event {
+
+    public String owner;
+  }
+}
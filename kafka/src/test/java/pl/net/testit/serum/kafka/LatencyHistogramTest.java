@@ -0,0 +1,48 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  void percentilesAreWithinHistogramPrecision() {
+    // given histogram with latencies from 1 to 10000 ms
+    var histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 10_000; millis++) {
+      histogram.recordMillis(millis);
+    }
+
+    // when stats are taken
+    var stats = histogram.getStats();
+
+    // then percentiles should be within 3.2% of exact values
+    assertAll(
+        () -> assertThat(stats.getCount()).isEqualTo(10_000),
+        () -> assertThat(stats.getMin()).isEqualTo(Duration.ofMillis(1)),
+        () -> assertThat(stats.getMax()).isEqualTo(Duration.ofMillis(10_000)),
+        () -> assertThat((double) stats.getP50().toMillis()).isWithin(5_000 * 0.032).of(5_000),
+        () -> assertThat((double) stats.getP95().toMillis()).isWithin(9_500 * 0.032).of(9_500),
+        () -> assertThat((double) stats.getP99().toMillis()).isWithin(9_900 * 0.032).of(9_900)
+    );
+  }
+
+  @Test
+  void bucketBoundsCoverRecordedValues() {
+    for (long micros : new long[]{0, 1, 63, 64, 65, 1000, 123_456, 10_000_000_000L}) {
+      var index = LatencyHistogram.bucketIndex(micros);
+      assertAll(
+          () -> assertThat(LatencyHistogram.bucketUpperBound(index)).isAtLeast(micros),
+          () -> assertThat(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < micros).isTrue()
+      );
+    }
+  }
+
+  @Test
+  void emptyHistogramHasNoSamples() {
+    assertThat(new LatencyHistogram().getStats().getCount()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,245 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedFileEventStoreTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void eventsAreMaterializedFromSegmentFiles() throws Exception {
+    // given store with small segments
+    var store = new MappedFileEventStore<String>(directory, "test", "topic", 64,
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+
+    // when events with key and headers are added
+    var headers = new RecordHeaders().add("correlationId", "abc".getBytes(StandardCharsets.UTF_8));
+    store.add(event(new ConsumerRecord<>("topic", 3, 10L, 1000L, TimestampType.LOG_APPEND_TIME, 3, 5, "key",
+        "first", headers, Optional.empty())));
+    store.add(event(new ConsumerRecord<>("topic", 1, 11L, 2000L, TimestampType.CREATE_TIME, -1, 6, null,
+        "second", new RecordHeaders(), Optional.empty())));
+    var events = new ArrayList<KafkaEventWrapper<String>>();
+    store.forEach(events::add);
+    store.close();
+
+    // then events should be restored from files
+    var first = events.get(0).getConsumerRecord();
+    var second = events.get(1).getConsumerRecord();
+    assertAll(
+        () -> assertThat(store.size()).isEqualTo(2),
+        () -> assertThat(first.key()).isEqualTo("key"),
+        () -> assertThat(first.value()).isEqualTo("first"),
+        () -> assertThat(first.partition()).isEqualTo(3),
+        () -> assertThat(first.offset()).isEqualTo(10L),
+        () -> assertThat(first.timestamp()).isEqualTo(1000L),
+        () -> assertThat(first.timestampType()).isEqualTo(TimestampType.LOG_APPEND_TIME),
+        () -> assertThat(new String(first.headers().lastHeader("correlationId").value(), StandardCharsets.UTF_8))
+            .isEqualTo("abc"),
+        () -> assertThat(second.key()).isNull(),
+        () -> assertThat(second.value()).isEqualTo("second"),
+        () -> assertThat(Files.list(directory).count()).isEqualTo(2)
+    );
+  }
+
+  @Test
+  void materializedEventsAreReused() {
+    // given store materializing events with lazily deserialized content
+    var counter = new DeserializationCounter();
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, String::toUpperCase, counter,
+            receivedAt, publishTimes));
+    store.add(event(new ConsumerRecord<>("topic", 0, 0L, "key", "value")));
+
+    // when events are iterated and content is read twice
+    var first = store.iterator().next();
+    first.getContent();
+    var second = store.iterator().next();
+    second.getContent();
+    store.close();
+
+    // then the same event should be returned and deserialized once
+    assertAll(
+        () -> assertThat(second).isSameInstanceAs(first),
+        () -> assertThat(second.getContent()).isEqualTo("VALUE"),
+        () -> assertThat(counter.getStats().getPerformed()).isEqualTo(1)
+    );
+  }
+
+  @Test
+  void publishTimesAreWrittenToSegmentOnceAcknowledged() throws Exception {
+    // given store and record polled before its acknowledgement
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, String::valueOf,
+            new DeserializationCounter(), receivedAt, publishTimes));
+    var topicRecords = new PublishedRecords().track("topic");
+    topicRecords.sending();
+    var record = new ConsumerRecord<>("topic", 0, 0L, "key", "value");
+    store.add(new KafkaEventWrapper<>(record, String::valueOf, new DeserializationCounter(), 1000L,
+        topicRecords.get(0, 0L)));
+    var pendingBeforeAcknowledgement = store.getPendingPublishTimesCount();
+
+    // when record is acknowledged
+    topicRecords.acknowledged(0, 0L, 900L, 950L);
+
+    // then publish times should be written to segment instead of kept on-heap
+    store.close();
+    var segment = ByteBuffer.wrap(Files.readAllBytes(Files.list(directory).findFirst().orElseThrow()));
+    assertAll(
+        () -> assertThat(pendingBeforeAcknowledgement).isEqualTo(1),
+        () -> assertThat(store.getPendingPublishTimesCount()).isEqualTo(0),
+        () -> assertThat(segment.getLong(29)).isEqualTo(900L),
+        () -> assertThat(segment.getLong(37)).isEqualTo(950L)
+    );
+  }
+
+  @Test
+  void segmentsAreMappedOnFirstEventAndGrow() throws Exception {
+    // given store with segments growing up to default size
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    var filesBeforeFirstEvent = Files.list(directory).count();
+
+    // when event is added
+    store.add(event(new ConsumerRecord<>("topic", 0, 0L, "key", "value")));
+
+    // then only small segment should be created
+    var segment = Files.list(directory).findFirst().orElseThrow();
+    var mappedSize = Files.size(segment);
+    store.close();
+    assertAll(
+        () -> assertThat(filesBeforeFirstEvent).isEqualTo(0),
+        () -> assertThat(mappedSize).isEqualTo(MappedFileEventStore.INITIAL_SEGMENT_SIZE)
+    );
+  }
+
+  @Test
+  void closedSegmentIsTruncatedAndReadBack() throws Exception {
+    // given store with two events, the first one acknowledged after it was consumed
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    var topicRecords = new PublishedRecords().track("topic");
+    topicRecords.sending();
+    store.add(new KafkaEventWrapper<>(new ConsumerRecord<>("topic", 0, 0L, "key", "first"), String::valueOf,
+        new DeserializationCounter(), 1000L, topicRecords.get(0, 0L)));
+    topicRecords.acknowledged(0, 0L, 900L, 950L);
+    store.add(event(new ConsumerRecord<>("topic", 1, 5L, null, "second")));
+
+    // when store is closed and its segment is read
+    store.close();
+    var segment = Files.list(directory).findFirst().orElseThrow();
+    var records = SpillSegmentReader.read(segment, "topic");
+
+    // then segment should contain only written records followed by end marker
+    assertAll(
+        () -> assertThat(Files.size(segment)).isEqualTo(store.getRetainedBytes() + Integer.BYTES),
+        () -> assertThat(records).hasSize(2),
+        () -> assertThat(records.get(0).getRecord().key()).isEqualTo("key"),
+        () -> assertThat(records.get(0).getRecord().value()).isEqualTo("first"),
+        () -> assertThat(records.get(0).getReceivedAt()).isEqualTo(1000L),
+        () -> assertThat(records.get(0).getSentAt()).isEqualTo(900L),
+        () -> assertThat(records.get(0).getAcknowledgedAt()).isEqualTo(950L),
+        () -> assertThat(records.get(1).getRecord().key()).isNull(),
+        () -> assertThat(records.get(1).getRecord().partition()).isEqualTo(1),
+        () -> assertThat(records.get(1).getRecord().offset()).isEqualTo(5L),
+        () -> assertThat(records.get(1).getSentAt()).isEqualTo(-1L)
+    );
+  }
+
+  @Test
+  void segmentOfOpenStoreEndsAfterLastRecord() throws Exception {
+    // given open store with mapped segment larger than its single event
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    store.add(event(new ConsumerRecord<>("topic", 0, 0L, "key", "value")));
+
+    // when segment is read before store is closed
+    var records = SpillSegmentReader.read(Files.list(directory).findFirst().orElseThrow(), "topic");
+    store.close();
+
+    // then zeroed tail of segment should not be read as records
+    assertThat(records).hasSize(1);
+  }
+
+  @Test
+  void onlyRecentMaterializedEventsAreCached() {
+    // given store with more events than materialized cache size
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    for (int i = 0; i < MappedFileEventStore.MATERIALIZED_CACHE_SIZE * 2; i++) {
+      store.add(event(new ConsumerRecord<>("topic", 0, i, "key", "value-" + i)));
+    }
+
+    // when all events are iterated
+    store.forEach(event -> {
+    });
+    var lastEvent = store.positionLookup().apply(store.size() - 1);
+    var cachedCount = store.getMaterializedCount();
+    store.close();
+
+    // then only the most recent events should be kept on-heap
+    assertAll(
+        () -> assertThat(cachedCount).isEqualTo(MappedFileEventStore.MATERIALIZED_CACHE_SIZE),
+        () -> assertThat(lastEvent.getContent()).isEqualTo("value-" + (store.size() - 1))
+    );
+  }
+
+  @Test
+  void indexOfStoreKeepsPositionsInsteadOfEvents() {
+    // given index using lookup of store
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    var index = EventIndex.byKey(store.positionLookup());
+
+    // when events are added to store and index
+    for (int i = 0; i < 10; i++) {
+      var event = event(new ConsumerRecord<>("topic", 0, i, "key-" + i % 2, "value-" + i));
+      store.add(event);
+      index.add(event, i, 0);
+    }
+    var found = index.find("key-1", 0);
+    store.close();
+
+    // then index should materialize events through store without referencing them
+    assertAll(
+        () -> assertThat(index.getIndexedCount()).isEqualTo(10),
+        () -> assertThat(index.getReferencedEventCount()).isEqualTo(0),
+        () -> assertThat(found).hasSize(5),
+        () -> assertThat(found.get(0).getContent()).isEqualTo("value-1")
+    );
+  }
+
+  @Test
+  void eventsAddedAfterCloseAreIgnored() throws Exception {
+    // given closed store
+    var store = new MappedFileEventStore<String>(directory, "test", "topic",
+        (record, receivedAt, publishTimes) -> new KafkaEventWrapper<>(record, record.value()));
+    store.close();
+
+    // when event is added
+    store.add(event(new ConsumerRecord<>("topic", 0, 0L, "key", "value")));
+
+    // then no segment file should be created
+    assertAll(
+        () -> assertThat(store.size()).isEqualTo(0),
+        () -> assertThat(Files.list(directory).count()).isEqualTo(0)
+    );
+  }
+
+  private static KafkaEventWrapper<String> event(ConsumerRecord<String, String> record) {
+    return new KafkaEventWrapper<>(record, record.value());
+  }
+}
@@ -0,0 +1,83 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.junit.jupiter.api.Test;
+
+public class OffsetCommitterTest {
+
+  private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+  @Test
+  void noneCommitPolicyNeverCommits() {
+    // given committer with none policy
+    var committer = new OffsetCommitter(CommitPolicy.none());
+
+    // when records are polled and poller stops
+    committer.afterPoll(consumer, 10);
+    committer.beforeClose(consumer);
+
+    // then no commit should be issued
+    assertThat(committer.getStats().getCommitsIssued()).isEqualTo(0);
+  }
+
+  @Test
+  void syncCommitPolicyCommitsOnlyNonEmptyPolls() {
+    // given committer with sync policy
+    var committer = new OffsetCommitter(CommitPolicy.sync());
+
+    // when empty and non empty polls are made
+    committer.afterPoll(consumer, 0);
+    committer.afterPoll(consumer, 3);
+    committer.afterPoll(consumer, 0);
+    committer.beforeClose(consumer);
+
+    // then only one commit should be issued
+    assertThat(committer.getStats().getCommitsIssued()).isEqualTo(1);
+  }
+
+  @Test
+  void asyncCommitPolicyBatchesCommitsByInterval() {
+    // given committer with long commit interval
+    var committer = new OffsetCommitter(CommitPolicy.async(Duration.ofHours(1)));
+
+    // when many polls are made within interval
+    committer.afterPoll(consumer, 3);
+    committer.afterPoll(consumer, 5);
+    var commitsBeforeClose = committer.getStats().getCommitsIssued();
+    committer.beforeClose(consumer);
+
+    // then pending offsets should be committed once on close
+    assertAll(
+        () -> assertThat(commitsBeforeClose).isEqualTo(0),
+        () -> assertThat(committer.getStats().getCommitsIssued()).isEqualTo(1)
+    );
+  }
+
+  @Test
+  void commitIsDueOnlyWhenPolicyCommitsPolledRecords() {
+    var none = new OffsetCommitter(CommitPolicy.none());
+    var sync = new OffsetCommitter(CommitPolicy.sync());
+    var async = new OffsetCommitter(CommitPolicy.async(Duration.ofHours(1)));
+    assertAll(
+        () -> assertThat(none.isCommitDue(5)).isFalse(),
+        () -> assertThat(sync.isCommitDue(0)).isFalse(),
+        () -> assertThat(sync.isCommitDue(5)).isTrue(),
+        () -> assertThat(async.isCommitDue(5)).isFalse()
+    );
+  }
+
+  @Test
+  void asyncCommitPolicyRequiresPositiveInterval() {
+    assertAll(
+        () -> assertThrows(NullPointerException.class, () -> CommitPolicy.async(null)),
+        () -> assertThrows(IllegalArgumentException.class, () -> CommitPolicy.async(Duration.ZERO)),
+        () -> assertThrows(IllegalArgumentException.class, () -> CommitPolicy.async(Duration.ofSeconds(-1)))
+    );
+  }
+}
@@ -0,0 +1,137 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+public class PartitionDispatcherTest {
+
+  @Test
+  void recordsOfPartitionAreProcessedInOrder() throws Exception {
+    // given dispatcher with two workers and small queues
+    var executor = Executors.newCachedThreadPool();
+    var processed = new ConcurrentHashMap<Integer, List<Long>>();
+    var threads = ConcurrentHashMap.<String>newKeySet();
+    var dispatcher = new PartitionDispatcher(executor, "topic", 2, 4, record -> {
+      threads.add(Thread.currentThread().getName());
+      processed.computeIfAbsent(record.getRawRecord().partition(), p -> new ArrayList<>())
+          .add(record.getRawRecord().offset());
+    });
+
+    // when records of four partitions are dispatched
+    for (long offset = 0; offset < 50; offset++) {
+      for (int partition = 0; partition < 4; partition++) {
+        dispatcher.dispatch(record(partition, offset));
+      }
+    }
+    dispatcher.close();
+    executor.shutdown();
+
+    // then all records should be processed in partition order on both workers
+    var expectedOffsets = new ArrayList<Long>();
+    for (long offset = 0; offset < 50; offset++) {
+      expectedOffsets.add(offset);
+    }
+    assertAll(
+        () -> assertThat(processed.keySet()).containsExactly(0, 1, 2, 3),
+        () -> processed.values().forEach(offsets -> assertThat(offsets).containsExactlyElementsIn(expectedOffsets)
+            .inOrder()),
+        () -> assertThat(threads).hasSize(2)
+    );
+  }
+
+  @Test
+  void awaitIdleReturnsWhenAllRecordsAreProcessed() throws Exception {
+    // given dispatcher with slow handler
+    var executor = Executors.newCachedThreadPool();
+    var processed = new ConcurrentHashMap<Long, Boolean>();
+    var dispatcher = new PartitionDispatcher(executor, "topic", 3, 10, record -> {
+      sleep(5);
+      processed.put(record.getRawRecord().offset(), true);
+    });
+
+    // when records are dispatched and dispatcher awaited
+    for (long offset = 0; offset < 9; offset++) {
+      dispatcher.dispatch(record((int) offset, offset));
+    }
+    dispatcher.awaitIdle();
+    var processedWhenIdle = Map.copyOf(processed);
+    dispatcher.close();
+    executor.shutdown();
+
+    // then all records should be processed
+    assertThat(processedWhenIdle).hasSize(9);
+  }
+
+  @Test
+  void dispatchGivesUpWhenDispatcherIsStopped() throws Exception {
+    // given dispatcher with single worker blocked on first record and full queue
+    var executor = Executors.newCachedThreadPool();
+    var release = new CountDownLatch(1);
+    var dispatcher = new PartitionDispatcher(executor, "topic", 1, 1, record -> await(release));
+    dispatcher.dispatch(record(0, 0));
+    dispatcher.dispatch(record(0, 1));
+
+    // when dispatcher is stopped while poll thread waits for space in queue
+    executor.submit(() -> {
+      sleep(200);
+      dispatcher.stop();
+    });
+    var dispatched = dispatcher.dispatch(record(0, 2));
+    release.countDown();
+    dispatcher.close();
+    executor.shutdown();
+
+    // then record should not be dispatched
+    assertThat(dispatched).isFalse();
+  }
+
+  @Test
+  void dispatchFailsWhenWorkerIsNotRunning() throws Exception {
+    // given dispatcher whose worker was interrupted
+    var executor = Executors.newSingleThreadExecutor();
+    var dispatcher = new PartitionDispatcher(executor, "topic", 1, 1, record -> {
+    });
+    executor.shutdownNow();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+
+    // when queue of worker is full
+    dispatcher.dispatch(record(0, 0));
+
+    // then dispatch should fail instead of blocking poll thread
+    assertAll(
+        () -> assertThrows(KafkaClientException.class, () -> dispatcher.dispatch(record(0, 1))),
+        () -> assertThrows(KafkaClientException.class, dispatcher::awaitIdle)
+    );
+  }
+
+  private static PolledRecord record(int partition, long offset) {
+    return new PolledRecord(new ConsumerRecord<>("topic", partition, offset, null, new byte[0]), 0, null);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
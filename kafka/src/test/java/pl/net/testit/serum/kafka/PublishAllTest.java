@@ -0,0 +1,120 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Asynchronous publishing against producer which acknowledges records only when test completes them.
+ */
+public class PublishAllTest {
+
+  private static final String TOPIC = "topic";
+
+  private final MockProducer<String, byte[]> producer = new MockProducer<>(false, new StringSerializer(),
+      new ByteArraySerializer());
+  private final SerumKafkaClient client = SerumKafkaClient.builder(new InMemoryKafkaTransport() {
+    @Override
+    public Producer<String, byte[]> createProducer(Properties properties) {
+      return producer;
+    }
+  }).build();
+
+  @AfterEach
+  void closeClient() {
+    client.close();
+  }
+
+  @Test
+  void publishEventAsyncCompletesOnAcknowledgement() {
+    // given event published without waiting
+    var result = client.publishEventAsync(TOPIC, "{}");
+    var completedBeforeAck = result.isDone();
+
+    // when broker acknowledges it
+    producer.completeNext();
+
+    // then future should be completed with record metadata
+    assertAll(
+        () -> assertThat(completedBeforeAck).isFalse(),
+        () -> assertThat(result.join().topic()).isEqualTo(TOPIC)
+    );
+  }
+
+  @Test
+  void publishAllPipelinesAtMostMaxInFlightEvents() throws Exception {
+    // given 5 events published with at most 2 in flight
+    var result = CompletableFuture.supplyAsync(() -> client.publishAll(records(5), 2));
+
+    // when first events are sent and not acknowledged
+    await().atMost(Duration.ofSeconds(5)).until(() -> producer.history().size() == 2);
+    TimeUnit.MILLISECONDS.sleep(100);
+    var sentBeforeAck = producer.history().size();
+
+    // and then acknowledged one by one
+    while (!result.isDone()) {
+      if (producer.completeNext()) {
+        continue;
+      }
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+    var summary = result.join();
+
+    // then next events should be sent only after acknowledgements and summary should count all of them
+    assertAll(
+        () -> assertThat(sentBeforeAck).isEqualTo(2),
+        () -> assertThat(summary.getSent()).isEqualTo(5),
+        () -> assertThat(summary.getAcknowledged()).isEqualTo(5),
+        () -> assertThat(summary.getFailed()).isEqualTo(0),
+        () -> assertThat(summary.getAckLatency().getCount()).isEqualTo(5),
+        () -> assertThat(summary.getAckLatency(100)).isEqualTo(summary.getAckLatency().getMax()),
+        () -> assertThat(producer.history()).hasSize(5)
+    );
+  }
+
+  @Test
+  void publishAllReportsFailedEvents() {
+    // given 3 events published at once
+    var result = CompletableFuture.supplyAsync(() -> client.publishAll(records(3), 10));
+    await().atMost(Duration.ofSeconds(5)).until(() -> producer.history().size() == 3);
+
+    // when one is acknowledged and two fail
+    producer.completeNext();
+    producer.errorNext(new RuntimeException("first failure"));
+    producer.errorNext(new RuntimeException("second failure"));
+
+    // then failures should be aggregated in single exception
+    var exception = assertThrows(CompletionException.class, result::join).getCause();
+    assertAll(
+        () -> assertThat(exception).isInstanceOf(KafkaClientException.class),
+        () -> assertThat(exception).hasMessageThat().contains("Failed to publish 2 events"),
+        () -> assertThat(exception).hasMessageThat().contains("acknowledged: 1"),
+        () -> assertThat(exception.getSuppressed()).hasLength(2)
+    );
+  }
+
+  @Test
+  void publishAllRejectsMaxInFlightLessThanOne() {
+    assertThrows(IllegalArgumentException.class, () -> client.publishAll(records(1), 0));
+  }
+
+  private static Stream<ProducerRecord<String, String>> records(int count) {
+    return IntStream.range(0, count).mapToObj(i -> new ProducerRecord<>(TOPIC, "key-" + i, "{}"));
+  }
+}
@@ -0,0 +1,69 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class PublishedRecordsTest {
+
+  private final PublishedRecords publishedRecords = new PublishedRecords();
+  private final PublishedRecords.TopicRecords topicRecords = publishedRecords.track("topic");
+
+  @Test
+  void recordAcknowledgedBeforePollIsFoundOnce() {
+    // given acknowledged record
+    topicRecords.sending();
+    topicRecords.acknowledged(1, 5, 100, 120);
+
+    // when record is polled twice
+    var times = topicRecords.get(1, 5);
+    var timesOfSecondPoll = topicRecords.get(1, 5);
+
+    // then times should be found only on first lookup
+    assertAll(
+        () -> assertThat(times.isPublished()).isTrue(),
+        () -> assertThat(times.getSentAt()).isEqualTo(100),
+        () -> assertThat(times.getAcknowledgedAt()).isEqualTo(120),
+        () -> assertThat(timesOfSecondPoll).isNull()
+    );
+  }
+
+  @Test
+  void recordPolledBeforeAcknowledgementIsFilledInLater() {
+    // given record polled while its send is not acknowledged
+    topicRecords.sending();
+    var times = topicRecords.get(0, 7);
+    var publishedBeforeAck = times.isPublished();
+    var produceLatency = new AtomicLong(-1);
+    times.whenPublished(() -> produceLatency.set(times.getAcknowledgedAt() - times.getSentAt()));
+
+    // when acknowledgement arrives
+    topicRecords.acknowledged(0, 7, 100, 130);
+
+    // then times should be filled in and listener notified
+    assertAll(
+        () -> assertThat(publishedBeforeAck).isFalse(),
+        () -> assertThat(times.isPublished()).isTrue(),
+        () -> assertThat(times.getSentAt()).isEqualTo(100),
+        () -> assertThat(produceLatency.get()).isEqualTo(30)
+    );
+  }
+
+  @Test
+  void recordsOfOtherProducersAreNotTracked() {
+    // given topic without pending sends and topic not polled by client
+    topicRecords.sending();
+    topicRecords.failed();
+
+    // when records are looked up
+    var times = topicRecords.get(0, 3);
+
+    // then nothing should be returned
+    assertAll(
+        () -> assertThat(times).isNull(),
+        () -> assertThat(publishedRecords.get("other-topic")).isNull()
+    );
+  }
+}
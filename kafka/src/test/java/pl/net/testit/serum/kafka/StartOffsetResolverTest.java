@@ -0,0 +1,68 @@
+package pl.net.testit.serum.kafka;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+public class StartOffsetResolverTest {
+
+  private static final String TOPIC = "topic";
+  private static final TopicPartition PARTITION_0 = new TopicPartition(TOPIC, 0);
+  private static final TopicPartition PARTITION_1 = new TopicPartition(TOPIC, 1);
+
+  private final InMemoryKafkaTransport transport = new InMemoryKafkaTransport().createTopic(TOPIC, 2);
+  private final InMemoryConsumer consumer = new InMemoryConsumer(transport, new Properties());
+  private final List<Collection<TopicPartition>> positioned = new ArrayList<>();
+
+  @Test
+  void partitionsArePositionedAtStartTimestampOrEnd() {
+    // given partition with records before and after start timestamp and partition with older records only
+    append(0, 1000);
+    append(0, 2000);
+    append(0, 3000);
+    append(1, 1000);
+    var resolver = new StartOffsetResolver(consumer, 2000, positioned::add);
+
+    // when partitions are assigned
+    consumer.assign(List.of(PARTITION_0, PARTITION_1));
+    resolver.onPartitionsAssigned(List.of(PARTITION_0, PARTITION_1));
+
+    // then they should be positioned at first record not older than start timestamp or at end offset
+    assertAll(
+        () -> assertThat(consumer.position(PARTITION_0)).isEqualTo(1),
+        () -> assertThat(consumer.position(PARTITION_1)).isEqualTo(1),
+        () -> assertThat(positioned).containsExactly(List.of(PARTITION_0, PARTITION_1))
+    );
+  }
+
+  @Test
+  void reassignedPartitionKeepsPosition() {
+    // given partition positioned by resolver and consumed further
+    append(0, 1000);
+    append(0, 2000);
+    var resolver = new StartOffsetResolver(consumer, 0, positioned::add);
+    consumer.assign(List.of(PARTITION_0));
+    resolver.onPartitionsAssigned(List.of(PARTITION_0));
+    consumer.seek(PARTITION_0, 2);
+
+    // when partition is assigned again
+    resolver.onPartitionsAssigned(List.of(PARTITION_0));
+
+    // then position should not be moved back and listener should be notified again
+    assertAll(
+        () -> assertThat(consumer.position(PARTITION_0)).isEqualTo(2),
+        () -> assertThat(positioned).hasSize(2)
+    );
+  }
+
+  private void append(int partition, long timestamp) {
+    transport.append(new ProducerRecord<>(TOPIC, partition, timestamp, null, new byte[0]));
+  }
+}